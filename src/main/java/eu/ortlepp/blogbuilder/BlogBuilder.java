@@ -3,6 +3,7 @@ package eu.ortlepp.blogbuilder;
 import eu.ortlepp.blogbuilder.action.Build;
 import eu.ortlepp.blogbuilder.action.Gui;
 import eu.ortlepp.blogbuilder.action.Initialize;
+import eu.ortlepp.blogbuilder.action.Watch;
 import eu.ortlepp.blogbuilder.model.Parameter;
 
 import java.io.IOException;
@@ -38,13 +39,45 @@ public final class BlogBuilder {
         if (args.length >= 1 && Parameter.isValidParam(args[0])) {
             /* Check if a second parameter exists */
             final String optional = args.length >= 2 ? args[1] : "";
-            new BlogBuilder().run(args[0], optional);
+
+            /* Check if the number of threads is set */
+            final int jobs = getJobs(args);
+            if (jobs < 0) {
+                printUsageInfo();
+            } else {
+                new BlogBuilder().run(args[0], optional, jobs);
+            }
         } else {
             printUsageInfo();
         }
     }
 
 
+    /**
+     * Get the number of threads from the command line arguments. The number of threads is set by the option --jobs
+     * after the action and its parameter.
+     *
+     * @param args Parameters for the application
+     * @return The number of threads; 0 if the option is not set (use the configuration), -1 if the option is invalid
+     */
+    private static int getJobs(final String... args) {
+        if (args.length <= 2) {
+            return 0;
+        }
+
+        if (args.length == 4 && Parameter.JOBS.toString().equalsIgnoreCase(args[2])) {
+            try {
+                final int jobs = Integer.parseInt(args[3]);
+                return jobs > 0 ? jobs : -1;
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+
     /**
      * Constructor, initializes the logging environment.
      */
@@ -64,8 +97,9 @@ public final class BlogBuilder {
      * @param action The action to start (first command line argument); has to be validated before
      * @param optional An optional parameter for the action (second command line argument); could
      *     be an empty string but must not be null
+     * @param jobs The number of threads for building; 0 = use the number from the configuration
      */
-    private void run(final String action, final String optional) {
+    private void run(final String action, final String optional, final int jobs) {
 
         if (Parameter.INITIALIZE.toString().equalsIgnoreCase(action)) {
             /* Run the initialization action */
@@ -80,7 +114,15 @@ public final class BlogBuilder {
             if (optional.isEmpty()) {
                 LOGGER.severe(MESSAGE_NO_DIR);
             } else {
-                new Build(optional).run();
+                new Build(optional, false, jobs).run();
+            }
+
+        } else if (Parameter.WATCH.toString().equalsIgnoreCase(action)) {
+            /* Run the watch action */
+            if (optional.isEmpty()) {
+                LOGGER.severe(MESSAGE_NO_DIR);
+            } else {
+                new Watch(optional, jobs).run();
             }
 
         } else if (Parameter.GUI.toString().equalsIgnoreCase(action)) {
@@ -2,22 +2,36 @@ package eu.ortlepp.blogbuilder.action;
 
 import eu.ortlepp.blogbuilder.model.Document;
 import eu.ortlepp.blogbuilder.model.DocumentType;
+import eu.ortlepp.blogbuilder.util.AssetMap;
 import eu.ortlepp.blogbuilder.util.Cleaner;
+import eu.ortlepp.blogbuilder.util.Compressor;
+import eu.ortlepp.blogbuilder.util.OutputFiles;
 import eu.ortlepp.blogbuilder.util.ResourceCopy;
 import eu.ortlepp.blogbuilder.util.Scanner;
+import eu.ortlepp.blogbuilder.util.Stage;
 import eu.ortlepp.blogbuilder.util.Writer;
 import eu.ortlepp.blogbuilder.util.config.Config;
 import eu.ortlepp.blogbuilder.util.config.Directories;
+import eu.ortlepp.blogbuilder.util.incremental.FeedEntryCache;
+import eu.ortlepp.blogbuilder.util.incremental.HtmlCache;
+import eu.ortlepp.blogbuilder.util.incremental.Manifest;
 import eu.ortlepp.blogbuilder.util.xml.FeedCreator;
 import eu.ortlepp.blogbuilder.util.xml.SitemapCreator;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
@@ -30,6 +44,9 @@ public final class Build implements Action {
     /** A logger to write out messages to the user. */
     private static final Logger LOGGER = Logger.getLogger(Build.class.getName());
 
+    /** The number of build steps that run concurrently to the writing of the HTML files. */
+    private static final int STAGES = 2;
+
     /** The directory of the project to build. */
     private final Path directory;
 
@@ -39,6 +56,27 @@ public final class Build implements Action {
     /** The list which contains all simple pages. */
     private final List<Document> pages;
 
+    /** The index and category pages (and their last modification) reported by the writer of the HTML files. */
+    private Map<String, LocalDateTime> specialPages;
+
+    /** The directory where the blog is built: the blog directory or a staging directory. */
+    private Path target;
+
+    /** The helper for writing the files of the built blog. */
+    private OutputFiles outputFiles;
+
+    /** The map of the fingerprinted resource files, filled while the resources are copied. */
+    private AssetMap assets;
+
+    /** The build manifest, used for incremental builds. */
+    private Manifest manifest;
+
+    /** Flag to force an incremental build, regardless of the configuration. */
+    private final boolean forceIncremental;
+
+    /** The number of threads for building; 0 = use the number of threads from the configuration. */
+    private final int jobs;
+
 
     /**
      * Constructor, prepare the build process.
@@ -46,9 +84,25 @@ public final class Build implements Action {
      * @param directory Directory of the project to build
      */
     public Build(final String directory) {
+        this(directory, false, 0);
+    }
+
+
+    /**
+     * Constructor, prepare the build process.
+     *
+     * @param directory Directory of the project to build
+     * @param forceIncremental Flag to force an incremental build; true = always build incrementally,
+     *     false = build incrementally only if it is enabled in the configuration
+     * @param jobs The number of threads for building; 0 = use the number of threads from the configuration
+     */
+    public Build(final String directory, final boolean forceIncremental, final int jobs) {
         this.directory = Paths.get(directory);
+        this.forceIncremental = forceIncremental;
+        this.jobs = jobs;
         blogposts = new ArrayList<Document>();
         pages = new ArrayList<Document>();
+        specialPages = Collections.emptyMap();
     }
 
 
@@ -61,12 +115,64 @@ public final class Build implements Action {
             LOGGER.info(String.format("Starting build process for %s", directory.getFileName()));
 
             Config.INSTANCE.loadConfig(directory.toFile());
-            new Cleaner(directory.toString()).clean();
-            scanDirectory();
-            writeFiles();
-            new ResourceCopy(directory.toString()).copyResources();
-            new FeedCreator(blogposts, directory.toString()).createFeed();
-            new SitemapCreator(directory.toString()).createSitemap(blogposts, pages);
+
+            /* A staged build starts with (hard links to) the published blog and publishes it when it is finished */
+            final Stage stage = Config.INSTANCE.isStaged() ? new Stage(directory.toString()) : null;
+            target = stage == null ? getBlogDirectory() : stage.prepare();
+            manifest = new Manifest(directory.toString(), target,
+                    forceIncremental || Config.INSTANCE.isIncremental());
+            final Compressor compressor = Config.INSTANCE.isGzip() ? new Compressor(getThreads()) : null;
+            outputFiles = new OutputFiles(Config.INSTANCE.isCompare(), compressor);
+            assets = new AssetMap(Config.INSTANCE.getResourcesFingerprint());
+
+            final HtmlCache htmlCache = new HtmlCache(directory.toString(), Config.INSTANCE.getCacheSize(),
+                    Document.getConverterFingerprint());
+            Document.setHtmlCache(htmlCache);
+
+            try {
+                /* Without a previous build the state of the blog directory is unknown, so it has to be cleaned */
+                final boolean clean = !manifest.hasPreviousBuild();
+                if (!clean) {
+                    LOGGER.info("Incremental build, only changed files are rebuilt");
+                }
+
+                if (getThreads() > 1) {
+                    buildPipelined();
+                } else {
+                    scanDirectory();
+                    copyResources();
+                    writeFiles();
+                    createFeed();
+                    createSitemap();
+                }
+                if (compressor != null) {
+                    compressor.finish();
+                }
+
+                /* The feed is always written */
+                manifest.addOutput(Config.INSTANCE.getFeedFile(), "");
+                manifest.removeOrphans();
+
+                /* Instead of cleaning beforehand, all files that were not produced by the build are removed */
+                if (clean) {
+                    new Cleaner(target, outputFiles.getFiles()).clean();
+                }
+                outputFiles.logSummary();
+                if (stage != null) {
+                    stage.publish();
+                }
+                manifest.save();
+            } finally {
+                if (compressor != null) {
+                    compressor.close();
+                }
+                if (stage != null) {
+                    stage.discard();
+                }
+                htmlCache.cleanUp();
+                Document.setHtmlCache(null);
+            }
+
             LOGGER.info("Build finished");
 
         } else {
@@ -75,12 +181,76 @@ public final class Build implements Action {
     }
 
 
+    /**
+     * Run the build steps as concurrent stages. Copying the resources does not depend on the content, so it starts
+     * right away. The feed only needs the sorted blog posts, so it starts as soon as the content directory is scanned
+     * and runs while the HTML files are written. The sitemap needs the index and category pages, so it is created
+     * after the HTML files are written. If resource files are fingerprinted, the HTML files and the feed wait until
+     * the resources are copied.
+     */
+    private void buildPipelined() {
+        final ExecutorService stages = Executors.newFixedThreadPool(STAGES);
+        try {
+            final Future<?> resources = stages.submit(this::copyResources);
+            scanDirectory();
+            if (assets.isEnabled()) {
+                /* The HTML files and the feed contain links to the fingerprinted resource files */
+                resources.get();
+            }
+            final Future<?> feed = stages.submit(this::createFeed);
+            writeFiles();
+            createSitemap();
+
+            resources.get();
+            feed.get();
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Build was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            stages.shutdown();
+        }
+    }
+
+
+    /**
+     * Copy the resources to the blog directory.
+     */
+    private void copyResources() {
+        new ResourceCopy(directory.toString(), target, manifest, outputFiles, getThreads(), assets).copyResources();
+    }
+
+
+    /**
+     * Create the feed of the blog. For incremental builds, the entries of unchanged blog posts are reused.
+     */
+    private void createFeed() {
+        final FeedEntryCache cache = new FeedEntryCache(directory.toString(), manifest.isEnabled());
+        new FeedCreator(blogposts, target, cache, outputFiles, assets).createFeed();
+        cache.cleanUp();
+    }
+
+
+    /**
+     * Create the sitemap of the blog. All files of the sitemap are recorded in the build manifest.
+     */
+    private void createSitemap() {
+        final List<String> files =
+                new SitemapCreator(target, outputFiles).createSitemap(blogposts, pages, specialPages);
+        for (final String file : files) {
+            manifest.addOutput(file, "");
+        }
+    }
+
+
     /**
      * Scan the content directory and find all Markdown files.
      */
     private void scanDirectory() {
         /* Find all Markdown files */
-        blogposts = new Scanner(directory.toString()).scanDirectory();
+        blogposts = new Scanner(directory.toString(), manifest, getThreads()).scanDirectory();
 
         /* Copy pages to pages list and remove them from blog post list */
         final Iterator<Document> iterator = blogposts.iterator();
@@ -132,12 +302,46 @@ public final class Build implements Action {
      * Write all blog posts, pages and special pages to HTML files.
      */
     private void writeFiles() {
-        final Writer writer = new Writer(Paths.get(directory.toString(), Directories.BLOG.toString()),
-                Paths.get(directory.toString(), Directories.TEMPLATES.toString()));
-        writer.writeBlogPosts(blogposts);
-        writer.writePages(pages);
-        writer.writeIndex(blogposts);
-        writer.writeCategoryPages(blogposts);
+        try (Writer writer = new Writer(target, Paths.get(directory.toString(), Directories.TEMPLATES.toString()),
+                manifest, outputFiles, getThreads(), assets)) {
+            writer.writeBlogPosts(blogposts);
+            writer.writePages(pages);
+            writer.writeIndex(blogposts);
+            writer.writeCategoryPages(blogposts);
+            writer.recordTemplateDependencies();
+            specialPages = writer.getSpecialPages();
+
+            if (manifest.isEnabled()) {
+                LOGGER.info(String.format("%d HTML files are up to date and were not written", writer.getSkipped()));
+            }
+        }
+    }
+
+
+    /**
+     * Get the blog directory for building in place. If the blog directory is a symbolic link (e.g. after a staged
+     * build), the directory it links to is returned.
+     *
+     * @return The blog directory
+     */
+    private Path getBlogDirectory() {
+        final Path blog = directory.resolve(Directories.BLOG.toString());
+        try {
+            return Files.isSymbolicLink(blog) ? blog.toRealPath() : blog;
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Directory %s is a broken link, build aborted", blog.getFileName()));
+            throw new RuntimeException(ex);
+        }
+    }
+
+
+    /**
+     * Get the number of threads for building. The number from the command line overrides the configuration.
+     *
+     * @return The number of threads for building
+     */
+    private int getThreads() {
+        return jobs > 0 ? jobs : Config.INSTANCE.getThreads();
     }
 
 }
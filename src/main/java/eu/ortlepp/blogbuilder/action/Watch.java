@@ -0,0 +1,207 @@
+package eu.ortlepp.blogbuilder.action;
+
+import eu.ortlepp.blogbuilder.util.config.Config;
+import eu.ortlepp.blogbuilder.util.config.Directories;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Action: Watch an existing project and rebuild it when a file changes. The directories for content, resources and
+ * templates as well as the configuration file are watched. Changes are collected until no further change happens
+ * for a short time (debouncing), then an incremental build runs. The incremental build rebuilds only the changed
+ * documents and the files that depend on them (neighbouring blog posts, index and category pages, feed and sitemap).
+ * There is no separate rebuild for single files: each change runs the whole incremental build, which restores
+ * unchanged content files from the build manifest without reading them. The directories are watched before the first
+ * build starts, so changes made during the first build are not lost. The action runs until the program is
+ * terminated.
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class Watch implements Action {
+
+    /** A logger to write out messages to the user. */
+    private static final Logger LOGGER = Logger.getLogger(Watch.class.getName());
+
+    /** The time (in milliseconds) without further changes before a build is started. */
+    private static final long DEBOUNCE = 200;
+
+    /** The directory of the project to watch. */
+    private final Path directory;
+
+    /** The watched directories, identified by their watch keys. */
+    private final Map<WatchKey, Path> directories;
+
+    /** The number of threads for building; 0 = use the number of threads from the configuration. */
+    private final int jobs;
+
+
+    /**
+     * Constructor, prepare the watch process.
+     *
+     * @param directory Directory of the project to watch
+     * @param jobs The number of threads for building; 0 = use the number of threads from the configuration
+     */
+    public Watch(final String directory, final int jobs) {
+        this.directory = Paths.get(directory);
+        this.jobs = jobs;
+        this.directories = new HashMap<WatchKey, Path>();
+    }
+
+
+    /**
+     * Run the watch process: start watching, build the project once, then wait for changes and rebuild the project
+     * after each change.
+     */
+    @Override
+    public void run() {
+        if (!Files.exists(directory) || !Files.isDirectory(directory)) {
+            LOGGER.severe(String.format("Directory %s does not exist, watch aborted", directory.getFileName()));
+            return;
+        }
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            register(watcher, directory);
+            registerAll(watcher, directory.resolve(Directories.CONTENT.toString()));
+            registerAll(watcher, directory.resolve(Directories.RESOURCES.toString()));
+            registerAll(watcher, directory.resolve(Directories.TEMPLATES.toString()));
+
+            /* Changes during the first build are collected by the watch service and trigger the next build */
+            build();
+            LOGGER.info(String.format("Watching %s for changes, press Ctrl+C to stop", directory.getFileName()));
+
+            while (true) {
+                final Set<Path> changed = new TreeSet<Path>();
+
+                /* Wait for the first change, then collect changes until it is quiet for a while */
+                WatchKey key = watcher.take();
+                while (key != null) {
+                    collectChanges(watcher, key, changed);
+                    key = watcher.poll(DEBOUNCE, TimeUnit.MILLISECONDS);
+                }
+
+                if (!changed.isEmpty()) {
+                    for (final Path file : changed) {
+                        LOGGER.info(String.format("Changed: %s", directory.relativize(file)));
+                    }
+                    build();
+                }
+            }
+
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Watching %s failed: %s", directory.getFileName(), ex.getMessage()));
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            LOGGER.info("Watch stopped");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Run an incremental build of the project. A failed build does not stop the watch process, the project is built
+     * again after the next change.
+     */
+    private void build() {
+        try {
+            new Build(directory.toString(), true, jobs).run();
+        } catch (RuntimeException ex) {
+            LOGGER.severe(String.format("Build failed: %s", ex.getMessage()));
+        }
+    }
+
+
+    /**
+     * Collect the changes of a watch key. Only changes of files that are input files of the build are collected.
+     * Directories that were created are registered at the watch service.
+     *
+     * @param watcher The watch service
+     * @param key The watch key with changes
+     * @param changed The set where the changed files are collected
+     * @throws IOException Error while registering a created directory
+     */
+    private void collectChanges(final WatchService watcher, final WatchKey key, final Set<Path> changed)
+            throws IOException {
+        final Path parent = directories.get(key);
+
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (parent == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                /* Changes were lost, the build will find out what changed */
+                changed.add(directory);
+                continue;
+            }
+
+            final Path file = parent.resolve((Path) event.context());
+
+            if (parent.equals(directory)) {
+                /* In the project directory only the configuration file is relevant */
+                if (Config.CONFIG_FILE.equals(file.getFileName().toString())) {
+                    changed.add(file);
+                }
+            } else {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                    registerAll(watcher, file);
+                }
+                changed.add(file);
+            }
+        }
+
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+
+    /**
+     * Register a directory and all its subdirectories at the watch service.
+     *
+     * @param watcher The watch service
+     * @param start The directory to register
+     * @throws IOException Error while registering a directory
+     */
+    private void registerAll(final WatchService watcher, final Path start) throws IOException {
+        if (!Files.isDirectory(start)) {
+            return;
+        }
+
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                    throws IOException {
+                register(watcher, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+
+    /**
+     * Register a single directory at the watch service.
+     *
+     * @param watcher The watch service
+     * @param dir The directory to register
+     * @throws IOException Error while registering the directory
+     */
+    private void register(final WatchService watcher, final Path dir) throws IOException {
+        final WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        directories.put(key, dir);
+    }
+
+}
@@ -5,20 +5,35 @@ import com.vladsch.flexmark.ext.gfm.strikethrough.StrikethroughSubscriptExtensio
 import com.vladsch.flexmark.ext.gfm.tasklist.TaskListExtension;
 import com.vladsch.flexmark.ext.tables.TablesExtension;
 import com.vladsch.flexmark.ext.typographic.TypographicExtension;
+import com.vladsch.flexmark.ast.Node;
 import com.vladsch.flexmark.html.HtmlRenderer;
 import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.superscript.SuperscriptExtension;
+import com.vladsch.flexmark.util.options.DataHolder;
+import com.vladsch.flexmark.util.options.DataKey;
 import com.vladsch.flexmark.util.options.MutableDataHolder;
 import com.vladsch.flexmark.util.options.MutableDataSet;
+import eu.ortlepp.blogbuilder.BlogBuilder;
+import eu.ortlepp.blogbuilder.model.markdown.LinkPrefixExtension;
+import eu.ortlepp.blogbuilder.util.Tools;
+import eu.ortlepp.blogbuilder.util.incremental.HtmlCache;
 
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Data object for a document (a Markdown file). If multiple objects are sorted in a list the sorting is done by the
@@ -50,7 +65,28 @@ public class Document implements Comparable<Document> {
     private DocumentType type;
 
     /** The content of the document. */
-    private final StringBuilder content;
+    private String content;
+
+    /** Loads the content of the document when it is needed; null if the content is already loaded. */
+    private Supplier<String> contentLoader;
+
+    /** Flag for lazy content; true = the content is loaded every time it is needed and not kept in memory. */
+    private boolean lazy;
+
+    /** Flag for lazy content; true = the document has content, false = the content is empty. */
+    private boolean contentPresent;
+
+    /** The hash of the Markdown file; used to detect changes between two builds. */
+    private String hash;
+
+    /** The position (in bytes) in the Markdown file where the content starts, after the leading header lines. */
+    private long contentOffset;
+
+    /** Returns the content of the document as HTML, one entry for each link prefix the content was converted for. */
+    private final Map<String, Supplier<String>> html;
+
+    /** The parsed Markdown content, used to render the content for further link prefixes; softly referenced. */
+    private SoftReference<Node> parsed;
 
     /** A link to the previous (earlier) blog post. */
     private String previous;
@@ -67,6 +103,12 @@ public class Document implements Comparable<Document> {
     /** A renderer to render the parsed Markdown to HTML. */
     private static final HtmlRenderer RENDERER;
 
+    /** The fingerprint of the Markdown parser and renderer (their options and extensions). */
+    private static final String CONVERTER_FINGERPRINT;
+
+    /** The cache for the content as HTML; null if no cache is used. */
+    private static volatile HtmlCache htmlCache;
+
 
     /**
      * Static initializer, initialize the static Markdown parser and renderer.
@@ -82,9 +124,54 @@ public class Document implements Comparable<Document> {
                                                         SuperscriptExtension.create(),
                                                         AutolinkExtension.create(),
                                                         TaskListExtension.create(),
-                                                        TypographicExtension.create()));
+                                                        TypographicExtension.create(),
+                                                        LinkPrefixExtension.create()));
         PARSER = Parser.builder(options).build();
         RENDERER = HtmlRenderer.builder(options).build();
+        CONVERTER_FINGERPRINT = createConverterFingerprint(options);
+    }
+
+
+    /**
+     * Create the fingerprint of the Markdown parser and renderer. The fingerprint contains all options and the classes
+     * of all extensions, so it changes whenever the conversion of Markdown to HTML may change.
+     *
+     * @param options The options of the parser and renderer
+     * @return The fingerprint of the parser and renderer
+     */
+    private static String createConverterFingerprint(final DataHolder options) {
+        final Map<String, String> values = new TreeMap<String, String>();
+        for (final Entry<?, Object> option : options.getAll().entrySet()) {
+            final String key = ((DataKey<?>) option.getKey()).getName();
+            final Object value = option.getValue();
+            if (value instanceof Collection) {
+                values.put(key, ((Collection<?>) value).stream()
+                        .map(item -> item.getClass().getName()).collect(Collectors.joining(",")));
+            } else {
+                values.put(key, String.valueOf(value));
+            }
+        }
+        return Tools.getHash(BlogBuilder.VERSION + values);
+    }
+
+
+    /**
+     * Getter for the fingerprint of the Markdown parser and renderer.
+     *
+     * @return The fingerprint of the Markdown parser and renderer
+     */
+    public static String getConverterFingerprint() {
+        return CONVERTER_FINGERPRINT;
+    }
+
+
+    /**
+     * Setter for the cache for the content as HTML. The cache is used by all documents.
+     *
+     * @param cache The cache for the content as HTML; null if no cache should be used
+     */
+    public static void setHtmlCache(final HtmlCache cache) {
+        htmlCache = cache;
     }
 
 
@@ -103,7 +190,14 @@ public class Document implements Comparable<Document> {
         this.created = LocalDateTime.MIN;
         this.modified = LocalDateTime.MIN;
         this.type = DocumentType.POST;
-        this.content = new StringBuilder();
+        this.content = "";
+        this.contentLoader = null;
+        this.lazy = false;
+        this.contentPresent = false;
+        this.hash = "";
+        this.contentOffset = 0;
+        this.html = new ConcurrentHashMap<String, Supplier<String>>();
+        this.parsed = null;
         this.previous = "";
         this.next = "";
         this.categories = new ArrayList<Category>();
@@ -225,22 +319,101 @@ public class Document implements Comparable<Document> {
 
 
     /**
-     * Getter for the content of the document.
+     * Getter for the content of the document. A content loader is called at most once, even if the content is
+     * requested by several threads.
      *
      * @return Content of the document
      */
-    public String getContent() {
-        return content.toString().trim();
+    public synchronized String getContent() {
+        if (lazy) {
+            return contentLoader.get().trim();
+        }
+
+        if (contentLoader != null) {
+            final String loaded = contentLoader.get();
+            content = content.isEmpty() ? loaded : content.concat(loaded);
+            contentLoader = null;
+        }
+        return content.trim();
     }
 
 
     /**
-     * Getter for the content of the document. The content is returned as HTML.
+     * Getter for the content of the document. The content is returned as HTML, all links are left untouched.
      *
      * @return Content of the document as HTML
      */
     public String getContentAsHtml() {
-        return RENDERER.render(PARSER.parse(getContent()));
+        return getContentAsHtml("");
+    }
+
+
+    /**
+     * Getter for the content of the document. The content is returned as HTML, a prefix is added to all relative
+     * links while the content is rendered (e.g. the relative path to the base dir or the base URL). The content is
+     * converted only once for each prefix (or taken from the HTML cache), all further calls (from any thread) return
+     * the same HTML. The Markdown is parsed only once for all prefixes as long as the parsed content is not released.
+     * For lazy content the HTML is only softly referenced, so it is released (and converted again if needed) when
+     * memory runs short.
+     *
+     * @param prefix The prefix to add to all relative links; an empty prefix leaves all links untouched
+     * @return Content of the document as HTML
+     */
+    public String getContentAsHtml(final String prefix) {
+        String result = getConvertedHtml(prefix);
+        if (result == null) {
+            synchronized (this) {
+                result = getConvertedHtml(prefix);
+                if (result == null) {
+                    final HtmlCache cache = htmlCache;
+                    if (cache == null) {
+                        result = convert(getContent(), prefix);
+                    } else {
+                        result = cache.getHtml(getContent(), prefix, markdown -> convert(markdown, prefix));
+                    }
+                    if (lazy) {
+                        html.put(prefix, new SoftReference<String>(result)::get);
+                    } else {
+                        final String converted = result;
+                        html.put(prefix, () -> converted);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Get the HTML that was converted before.
+     *
+     * @param prefix The prefix that was added to all relative links
+     * @return The content of the document as HTML; null if it is not converted yet (or released)
+     */
+    private String getConvertedHtml(final String prefix) {
+        final Supplier<String> converted = html.get(prefix);
+        return converted == null ? null : converted.get();
+    }
+
+
+    /**
+     * Convert Markdown content to HTML. The content is parsed only if the parsed content is not available anymore.
+     * Has to be called while the document is locked.
+     *
+     * @param markdown The Markdown content
+     * @param prefix The prefix to add to all relative links
+     * @return The content as HTML
+     */
+    private String convert(final String markdown, final String prefix) {
+        Node node = parsed == null ? null : parsed.get();
+        if (node == null) {
+            node = PARSER.parse(markdown);
+            parsed = new SoftReference<Node>(node);
+        }
+
+        /* The parser always returns a flexmark document, which holds the options for a single rendering */
+        ((MutableDataHolder) node).set(LinkPrefixExtension.LINK_PREFIX, prefix);
+        return RENDERER.render(node);
     }
 
 
@@ -249,8 +422,100 @@ public class Document implements Comparable<Document> {
      *
      * @param part The string to add
      */
-    public void addContent(final String part) {
-        content.append(part);
+    public synchronized void addContent(final String part) {
+        content = content.concat(part);
+        html.clear();
+        parsed = null;
+    }
+
+
+    /**
+     * Setter for the content of the document. The previous content is replaced.
+     *
+     * @param content The content to set
+     */
+    public synchronized void setContent(final String content) {
+        this.content = content;
+        this.contentLoader = null;
+        this.lazy = false;
+        this.html.clear();
+        this.parsed = null;
+    }
+
+
+    /**
+     * Setter for a loader which reads the content of the document when it is needed for the first time. Used for
+     * documents whose headers are already known (e.g. from a previous build) to avoid reading the file in advance.
+     *
+     * @param contentLoader The loader which returns the content of the document
+     */
+    public synchronized void setContentLoader(final Supplier<String> contentLoader) {
+        this.contentLoader = contentLoader;
+    }
+
+
+    /**
+     * Set lazy content for the document. The content is loaded every time it is needed and not kept in memory.
+     *
+     * @param contentLoader The loader which returns the content of the document
+     * @param contentPresent Flag if the document has content; true = content, false = empty content
+     */
+    public synchronized void setLazyContent(final Supplier<String> contentLoader, final boolean contentPresent) {
+        this.contentLoader = contentLoader;
+        this.contentPresent = contentPresent;
+        this.lazy = true;
+        this.html.clear();
+        this.parsed = null;
+    }
+
+
+    /**
+     * Check if the document has content. Lazy content is not loaded for the check.
+     *
+     * @return true = the document has content, false = the content is empty
+     */
+    public synchronized boolean hasContent() {
+        return lazy ? contentPresent : !getContent().isEmpty();
+    }
+
+
+    /**
+     * Getter for the hash of the Markdown file.
+     *
+     * @return The hash of the Markdown file; an empty string if the hash is unknown
+     */
+    public String getHash() {
+        return hash;
+    }
+
+
+    /**
+     * Setter for the hash of the Markdown file.
+     *
+     * @param hash The hash of the Markdown file
+     */
+    public void setHash(final String hash) {
+        this.hash = hash;
+    }
+
+
+    /**
+     * Getter for the position (in bytes) in the Markdown file where the content starts.
+     *
+     * @return The position in the Markdown file where the content starts
+     */
+    public long getContentOffset() {
+        return contentOffset;
+    }
+
+
+    /**
+     * Setter for the position (in bytes) in the Markdown file where the content starts.
+     *
+     * @param contentOffset The position in the Markdown file where the content starts
+     */
+    public void setContentOffset(final long contentOffset) {
+        this.contentOffset = contentOffset;
     }
 
 
@@ -304,16 +569,6 @@ public class Document implements Comparable<Document> {
     }
 
 
-    /**
-     * Setter for the list that contains the categories of the document.
-     *
-     * @param categories The list of categories to set
-     */
-    protected void setCategories(final List<Category> categories) {
-        categories.forEach(this.categories::add);
-    }
-
-
     /**
      * Adds a new category to the list of categories of the document. The new category is only added if the list does
      * not contain the category so far.
@@ -335,7 +590,7 @@ public class Document implements Comparable<Document> {
      * @return Result of the check; true = document is valid, false = document is not valid
      */
     public boolean isValidDocument() {
-        if (title.isEmpty() || getContent().isEmpty() || created.isEqual(LocalDateTime.MIN)) {
+        if (getTitle().isEmpty() || !hasContent() || getCreated().isEqual(LocalDateTime.MIN)) {
             return false;
         }
         return true;
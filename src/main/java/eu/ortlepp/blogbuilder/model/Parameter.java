@@ -10,11 +10,17 @@ public enum Parameter {
     /** Parameter to build a project. */
     BUILD("--build", "<DIRECTORY>" , "Build the project in <DIRECTORY>"),
 
+    /** Parameter to watch a project and rebuild it on changes. */
+    WATCH("--watch", "<DIRECTORY>", "Watch the project in <DIRECTORY> and rebuild it on changes"),
+
     /** Parameter to initialize a project. */
     INITIALIZE("--init", "<DIRECTORY>", "Initialize a new project in <DIRECTORY>"),
 
     /** Parameter to start the program in GUI mode. */
-    GUI("--gui", "", "Show the graphical interface");
+    GUI("--gui", "", "Show the graphical interface"),
+
+    /** Option to set the number of threads for building or watching a project. */
+    JOBS("--jobs", "<N>", "Use <N> threads for --build / --watch", true);
 
 
     /** The name of the parameter. */
@@ -26,6 +32,9 @@ public enum Parameter {
     /** The description of the parameter. */
     private final String description;
 
+    /** Flag for options; true = option for an action, false = action. */
+    private final boolean option;
+
 
     /**
      * Constructor to create a single Enum element. All fields are initialized with
@@ -36,9 +45,24 @@ public enum Parameter {
      * @param description The description of the parameter
      */
     Parameter(final String name, final String value, final String description) {
+        this(name, value, description, false);
+    }
+
+
+    /**
+     * Constructor to create a single Enum element. All fields are initialized with
+     * the given values.
+     *
+     * @param name The name of the parameter
+     * @param value The value of the parameter
+     * @param description The description of the parameter
+     * @param option Flag for options; true = option for an action, false = action
+     */
+    Parameter(final String name, final String value, final String description, final boolean option) {
         this.name = name;
         this.value = value;
         this.description = description;
+        this.option = option;
     }
 
 
@@ -54,6 +78,7 @@ public enum Parameter {
         this.name = name;
         this.value = "";
         this.description = description;
+        this.option = false;
     }
 
 
@@ -82,14 +107,15 @@ public enum Parameter {
 
 
     /**
-     * Check if an input string is a valid parameter.
+     * Check if an input string is a valid parameter. Options are no valid parameters on their own, they are only
+     * valid in addition to an action.
      *
      * @param input The string to check
      * @return The result of the check; true = valid parameter, false = no valid parameter
      */
     public static boolean isValidParam(final String input) {
         for (final Parameter parameter : Parameter.values()) {
-            if (parameter.toString().equalsIgnoreCase(input)) {
+            if (!parameter.option && parameter.toString().equalsIgnoreCase(input)) {
                 return true;
             }
         }
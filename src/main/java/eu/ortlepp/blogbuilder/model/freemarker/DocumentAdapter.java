@@ -1,17 +1,21 @@
 package eu.ortlepp.blogbuilder.model.freemarker;
 
 import eu.ortlepp.blogbuilder.model.Document;
-import eu.ortlepp.blogbuilder.util.Tools;
 import freemarker.template.AdapterTemplateModel;
 import freemarker.template.ObjectWrapper;
 import freemarker.template.TemplateHashModel;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
 import freemarker.template.WrappingTemplateModel;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * An adapter for Document data objects in FreeMarker templates. Some fields of the Document data object are
- * exposed for the use in FreeMarker templates.
+ * exposed for the use in FreeMarker templates. Each template model is created only once, when it is requested for the
+ * first time, and is reused for all further requests (from any template and any thread).
  *
  * @author Thorsten Ortlepp
  */
@@ -23,6 +27,9 @@ public class DocumentAdapter extends WrappingTemplateModel implements AdapterTem
     /** The wrapper for the adapter. */
     private final ObjectWrapper wrapper;
 
+    /** The template models that were already created, identified by their keys. */
+    private final Map<String, TemplateModel> models;
+
 
     /**
      * Constructor, initializes the adapter.
@@ -34,6 +41,7 @@ public class DocumentAdapter extends WrappingTemplateModel implements AdapterTem
         super(wrapper);
         this.document = document;
         this.wrapper = wrapper;
+        this.models = new ConcurrentHashMap<String, TemplateModel>();
     }
 
 
@@ -59,11 +67,23 @@ public class DocumentAdapter extends WrappingTemplateModel implements AdapterTem
      */
     @Override
     public TemplateModel get(final String key) throws TemplateModelException {
+        return models.computeIfAbsent(key, this::createModel);
+    }
+
+
+    /**
+     * Create a TemplateModel for a value from the Document data object. The content is not kept by the TemplateModel,
+     * it is requested from the Document each time (which converts it only once and may release lazy content).
+     *
+     * @param key The key for the desired value
+     * @return The TemplateModel for the given key; null if there is no value for the key
+     */
+    private TemplateModel createModel(final String key) {
         switch (key) {
             case "title":
                 return new StringModel(document.getTitle());
             case "content":
-                return new StringModel(getPreparedContent());
+                return (TemplateScalarModel) this::getPreparedContent;
             case "link":
                 return new StringModel(document.getPath());
             case "previous":
@@ -83,12 +103,13 @@ public class DocumentAdapter extends WrappingTemplateModel implements AdapterTem
 
 
     /**
-     * Prepare the content for the output: Get the HTML and create relative links with full paths.
+     * Prepare the content for the output: Get the HTML with relative links with full paths. The links are changed
+     * while the content is rendered.
      *
      * @return The prepared content
      */
     protected String getPreparedContent() {
-        return Tools.makeLinksRelative(document.getContentAsHtml(), document.getToBaseDir());
+        return document.getContentAsHtml(document.getToBaseDir());
     }
 
 
@@ -1,33 +1,66 @@
 package eu.ortlepp.blogbuilder.model.freemarker;
 
 import eu.ortlepp.blogbuilder.model.Document;
-import eu.ortlepp.blogbuilder.model.EmbeddedDocument;
 import freemarker.template.DefaultObjectWrapper;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
 import freemarker.template.Version;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * A wrapper for Document data objects in FreeMarker templates.
+ * A wrapper for Document data objects in FreeMarker templates. There is only one adapter for each document (and one
+ * for each document that is embedded in another page), so all templates that render a document share the template
+ * models of the document. The adapters are identified by the path of the HTML file of the document, which is unique
+ * within a build.
  *
  * @author Thorsten Ortlepp
  */
 public class DocumentWrapper extends DefaultObjectWrapper {
 
+    /** The adapters for documents, identified by the path of the HTML file. */
+    private final Map<String, DocumentAdapter> documents;
+
+    /** The adapters for embedded documents, identified by the path of the HTML file. */
+    private final Map<String, DocumentAdapter> embeddedDocuments;
+
+
     /**
-     * Constructor, only calls super().
+     * Constructor, calls super() and initializes the empty adapter caches.
      *
      * @param version Incompatible Improvements
      */
     public DocumentWrapper(final Version version) {
         super(version);
+        documents = new ConcurrentHashMap<String, DocumentAdapter>();
+        embeddedDocuments = new ConcurrentHashMap<String, DocumentAdapter>();
+    }
+
+
+    /**
+     * Wrap blog posts that are embedded in another page (e.g. the index or category pages). Each blog post gets an
+     * EmbeddedDocumentAdapter, it is created when the blog post is wrapped as embedded document for the first time.
+     *
+     * @param documents The embedded blog posts
+     * @return The adapters for the embedded blog posts
+     */
+    public List<TemplateModel> wrapEmbedded(final List<Document> documents) {
+        final List<TemplateModel> adapters = new ArrayList<TemplateModel>(documents.size());
+        for (final Document document : documents) {
+            adapters.add(embeddedDocuments.computeIfAbsent(document.getPath(),
+                key -> new EmbeddedDocumentAdapter(document, this)));
+        }
+        return adapters;
     }
 
 
     /**
-     * Add handler for Document data objects in FreeMarker templates. For objects of type Document
-     * or EmbeddedDocument a custom adapter is created; all other object types will be handled by
-     * the super class.
+     * Add handler for Document data objects in FreeMarker templates. For objects of type Document a custom adapter
+     * is returned, it is created when the document is wrapped for the first time; all other object types will be
+     * handled by the super class. Embedded documents are wrapped by wrapEmbedded().
      *
      * @param object Object to be handled by FreeMarker
      * @return The TemplateModel for the object
@@ -35,10 +68,9 @@ public class DocumentWrapper extends DefaultObjectWrapper {
      */
     @Override
     protected TemplateModel handleUnknownType(final Object object) throws TemplateModelException {
-        if (object instanceof EmbeddedDocument) {
-            return new EmbeddedDocumentAdapter((EmbeddedDocument) object, this);
-        } else if (object instanceof Document) {
-            return new DocumentAdapter((Document) object, this);
+        if (object instanceof Document) {
+            final Document document = (Document) object;
+            return documents.computeIfAbsent(document.getPath(), key -> new DocumentAdapter(document, this));
         }
         return super.handleUnknownType(object);
     }
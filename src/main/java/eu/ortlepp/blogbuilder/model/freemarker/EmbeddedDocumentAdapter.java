@@ -1,26 +1,26 @@
 package eu.ortlepp.blogbuilder.model.freemarker;
 
 import eu.ortlepp.blogbuilder.model.Document;
-import eu.ortlepp.blogbuilder.model.EmbeddedDocument;
 import freemarker.template.ObjectWrapper;
 
 /**
- * An adapter for EmbeddedDocument data objects in FreeMarker templates. The only difference to DocumentAdapter is the
- * handling of the content of the Document. EmbeddedDocumentAdapter leaves the content untouched and does not change
- * the links it contains.
+ * An adapter for blog posts that are embedded in another HTML page (e.g. the index or category pages) in FreeMarker
+ * templates. The adapter wraps the original Document, nothing is copied. The only difference to DocumentAdapter is
+ * the handling of the content of the Document. EmbeddedDocumentAdapter leaves the content untouched and does not
+ * change the links it contains, otherwise the embedded blog posts would contain malformed relative links.
  *
  * @author Thorsten Ortlepp
  */
 public class EmbeddedDocumentAdapter extends DocumentAdapter {
 
     /**
-     * Constructor, casts the given EmbeddedDocument to Document and calls super().
+     * Constructor, calls super().
      *
-     * @param document The (Embedded)Document data object
+     * @param document The Document data object
      * @param wrapper The wrapper for the adapter
      */
-    public EmbeddedDocumentAdapter(final EmbeddedDocument document, final ObjectWrapper wrapper) {
-        super((Document) document, wrapper);
+    public EmbeddedDocumentAdapter(final Document document, final ObjectWrapper wrapper) {
+        super(document, wrapper);
     }
 
 
@@ -0,0 +1,79 @@
+package eu.ortlepp.blogbuilder.model.freemarker;
+
+import freemarker.core.Environment;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.Version;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A FreeMarker configuration that tracks the dependencies between templates. Each time a template is included (or
+ * imported) while another template is processed, the included template is recorded as dependency of the main template
+ * that is processed. Transitive includes are recorded as well because they are requested while the same main template
+ * is processed.
+ *
+ * @author Thorsten Ortlepp
+ */
+public class TrackingConfiguration extends Configuration {
+
+    /** The recorded dependencies: the name of a main template and the names of all templates it depends on. */
+    private final Map<String, Set<String>> dependencies;
+
+
+    /**
+     * Constructor, initializes the configuration and the empty dependencies.
+     *
+     * @param version Incompatible Improvements
+     */
+    public TrackingConfiguration(final Version version) {
+        super(version);
+        dependencies = new ConcurrentHashMap<String, Set<String>>();
+    }
+
+
+    /**
+     * Get a template. All other getTemplate() methods and the include / import directives delegate to this method.
+     * If the template is requested while another template is processed, the template is recorded as dependency of
+     * the main template.
+     *
+     * @param name The name of the template
+     * @param locale The locale of the template
+     * @param customLookupCondition The custom lookup condition
+     * @param encoding The encoding of the template
+     * @param parseAsFtl Flag to parse the template as FreeMarker template
+     * @param ignoreMissing Flag to return null instead of throwing an exception if the template is missing
+     * @return The requested template
+     * @throws IOException Error while loading the template
+     */
+    @Override
+    public Template getTemplate(final String name, final Locale locale, final Object customLookupCondition,
+            final String encoding, final boolean parseAsFtl, final boolean ignoreMissing) throws IOException {
+        final Environment environment = Environment.getCurrentEnvironment();
+        if (environment != null) {
+            final String main = environment.getMainTemplate().getName();
+            dependencies.computeIfAbsent(main, key -> ConcurrentHashMap.newKeySet()).add(name);
+        }
+        return super.getTemplate(name, locale, customLookupCondition, encoding, parseAsFtl, ignoreMissing);
+    }
+
+
+    /**
+     * Get the recorded dependencies of a main template. The main template itself is always part of its dependencies.
+     *
+     * @param main The name of the main template
+     * @return The names of all templates the main template depends on
+     */
+    public Set<String> getDependencies(final String main) {
+        final Set<String> result = new TreeSet<String>(dependencies.getOrDefault(main, Collections.emptySet()));
+        result.add(main);
+        return result;
+    }
+
+}
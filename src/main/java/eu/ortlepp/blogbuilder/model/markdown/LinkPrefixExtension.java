@@ -0,0 +1,188 @@
+package eu.ortlepp.blogbuilder.model.markdown;
+
+import com.vladsch.flexmark.ast.HtmlBlock;
+import com.vladsch.flexmark.ast.HtmlInline;
+import com.vladsch.flexmark.ast.Node;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.html.HtmlWriter;
+import com.vladsch.flexmark.html.IndependentLinkResolverFactory;
+import com.vladsch.flexmark.html.LinkResolver;
+import com.vladsch.flexmark.html.renderer.NodeRenderer;
+import com.vladsch.flexmark.html.renderer.NodeRendererContext;
+import com.vladsch.flexmark.html.renderer.NodeRenderingHandler;
+import com.vladsch.flexmark.html.renderer.ResolvedLink;
+import com.vladsch.flexmark.util.options.DataKey;
+import com.vladsch.flexmark.util.options.MutableDataHolder;
+import eu.ortlepp.blogbuilder.util.Tools;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A flexmark extension that adds a prefix to all relative links while Markdown is rendered to HTML. The prefix is
+ * set on the parsed document before it is rendered (see LINK_PREFIX), so the same parsed content can be rendered with
+ * links relative to a page (prefix = the path to the base dir) or with absolute links (prefix = the base URL). Links
+ * in Markdown are changed by a link resolver; links in raw HTML blocks and inline HTML are changed in the raw HTML.
+ * The rendered HTML is never scanned for links, so text in code blocks is left untouched.
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class LinkPrefixExtension implements HtmlRenderer.HtmlRendererExtension {
+
+    /** The prefix to add to all relative links; an empty prefix leaves all links untouched. */
+    public static final DataKey<String> LINK_PREFIX = new DataKey<String>("LINK_PREFIX", "");
+
+
+    /**
+     * Private constructor, instances are created by create().
+     */
+    private LinkPrefixExtension() {
+        /* Nothing to initialize */
+    }
+
+
+    /**
+     * Create a new instance of the extension.
+     *
+     * @return The new instance of the extension
+     */
+    public static LinkPrefixExtension create() {
+        return new LinkPrefixExtension();
+    }
+
+
+    /**
+     * Set the options of the renderer. The extension has no options that are set for the renderer.
+     *
+     * @param options The options of the renderer
+     */
+    @Override
+    public void rendererOptions(final MutableDataHolder options) {
+        /* The prefix is set on the parsed document */
+    }
+
+
+    /**
+     * Extend the renderer: add the link resolver and the renderer for raw HTML.
+     *
+     * @param builder The builder of the renderer
+     * @param rendererType The type of the renderer
+     */
+    @Override
+    public void extend(final HtmlRenderer.Builder builder, final String rendererType) {
+        builder.linkResolverFactory(new PrefixLinkResolverFactory());
+        builder.nodeRendererFactory(options -> new RawHtmlRenderer());
+    }
+
+
+    /**
+     * Get the prefix for a rendering.
+     *
+     * @param context The context of the rendering
+     * @return The prefix to add to all relative links
+     */
+    private static String getPrefix(final NodeRendererContext context) {
+        return LINK_PREFIX.getFrom(context.getOptions());
+    }
+
+
+    /**
+     * Creates the link resolver for each rendering.
+     */
+    private static final class PrefixLinkResolverFactory extends IndependentLinkResolverFactory {
+
+        /**
+         * Create the link resolver for a rendering.
+         *
+         * @param context The context of the rendering
+         * @return The link resolver
+         */
+        @Override
+        public LinkResolver create(final NodeRendererContext context) {
+            final String prefix = getPrefix(context);
+            return (node, ctx, link) -> prefixLink(link, prefix);
+        }
+
+
+        /**
+         * Add the prefix to a relative link.
+         *
+         * @param link The link to resolve
+         * @param prefix The prefix to add
+         * @return The resolved link
+         */
+        private static ResolvedLink prefixLink(final ResolvedLink link, final String prefix) {
+            if (prefix.isEmpty() || Tools.isAbsoluteLink(link.getUrl())) {
+                return link;
+            }
+            return link.withUrl(prefix + link.getUrl());
+        }
+
+    }
+
+
+    /**
+     * Renders raw HTML blocks and inline HTML with prefixed links. Both are rendered like flexmark renders them with
+     * its default options (raw HTML is neither escaped nor suppressed).
+     */
+    private static final class RawHtmlRenderer implements NodeRenderer {
+
+        /**
+         * Get the handlers for the nodes rendered by this renderer.
+         *
+         * @return The handlers for raw HTML blocks and inline HTML
+         */
+        @Override
+        public Set<NodeRenderingHandler<?>> getNodeRenderingHandlers() {
+            return new HashSet<NodeRenderingHandler<?>>(Arrays.asList(
+                    new NodeRenderingHandler<HtmlBlock>(HtmlBlock.class, this::render),
+                    new NodeRenderingHandler<HtmlInline>(HtmlInline.class, this::render)));
+        }
+
+
+        /**
+         * Render a raw HTML block.
+         *
+         * @param node The HTML block
+         * @param context The context of the rendering
+         * @param html The writer for the HTML
+         */
+        private void render(final HtmlBlock node, final NodeRendererContext context, final HtmlWriter html) {
+            html.line();
+            if (node.hasChildren()) {
+                context.renderChildren(node);
+            } else {
+                html.rawPre(prefixLinks(node.getContentChars().normalizeEOL(), context));
+            }
+            html.lineIf(context.getHtmlOptions().htmlBlockCloseTagEol);
+        }
+
+
+        /**
+         * Render inline HTML.
+         *
+         * @param node The inline HTML
+         * @param context The context of the rendering
+         * @param html The writer for the HTML
+         */
+        private void render(final HtmlInline node, final NodeRendererContext context, final HtmlWriter html) {
+            html.rawPre(prefixLinks(node.getChars().normalizeEOL(), context));
+        }
+
+
+        /**
+         * Add the prefix to all relative links in raw HTML.
+         *
+         * @param raw The raw HTML
+         * @param context The context of the rendering
+         * @return The raw HTML with prefixed links
+         */
+        private static String prefixLinks(final String raw, final NodeRendererContext context) {
+            final String prefix = getPrefix(context);
+            return prefix.isEmpty() ? raw : Tools.prefixLinks(raw, prefix);
+        }
+
+    }
+
+}
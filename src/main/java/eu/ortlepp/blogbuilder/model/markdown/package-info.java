@@ -0,0 +1,6 @@
+/**
+ * Utilities to extend the Markdown (flexmark) capabilities.
+ *
+ * @author Thorsten Ortlepp
+ */
+package eu.ortlepp.blogbuilder.model.markdown;
@@ -0,0 +1,326 @@
+package eu.ortlepp.blogbuilder.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * The map of the fingerprinted resource files (assets). A fingerprinted resource file gets the hash of its content in
+ * its name (e.g. style.css is copied as style.0123456789.css), so the name changes whenever the content changes and
+ * the file can be cached by browsers and CDNs forever. The map is filled while the resources are copied and is used to
+ * change all links to fingerprinted files in the HTML files, the feed and the stylesheets.
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class AssetMap {
+
+    /** The number of characters of the content hash in the name of a fingerprinted file. */
+    private static final int HASH_LENGTH = 10;
+
+    /** The start of a link in a stylesheet. */
+    private static final String URL_START = "url(";
+
+    /** The extensions of the files that are fingerprinted (in lower case); empty = no files are fingerprinted. */
+    private final Set<String> extensions;
+
+    /** The fingerprinted files; the original path and the fingerprinted path, both relative to the blog directory. */
+    private final Map<String, String> assets;
+
+    /** The base URL of the blog, ending with a slash; absolute links to the blog start with it. */
+    private final String baseurl;
+
+
+    /**
+     * Constructor, initializes an empty map that fingerprints no files.
+     */
+    public AssetMap() {
+        this(new String[0]);
+    }
+
+
+    /**
+     * Constructor, initializes an empty map.
+     *
+     * @param extensions The extensions of the files that are fingerprinted (e.g. css, js or png)
+     */
+    public AssetMap(final String... extensions) {
+        this.extensions = new HashSet<String>();
+        for (final String extension : extensions) {
+            if (!extension.trim().isEmpty()) {
+                this.extensions.add(extension.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        this.assets = new ConcurrentHashMap<String, String>();
+        this.baseurl = Tools.getAbsoluteBaseUrl();
+    }
+
+
+    /**
+     * Check if fingerprinting is enabled, i.e. there is at least one extension of files to fingerprint.
+     *
+     * @return true = fingerprinting is enabled, false = no files are fingerprinted
+     */
+    public boolean isEnabled() {
+        return !extensions.isEmpty();
+    }
+
+
+    /**
+     * Check if the map contains no fingerprinted files.
+     *
+     * @return true = the map is empty, false = the map contains fingerprinted files
+     */
+    public boolean isEmpty() {
+        return assets.isEmpty();
+    }
+
+
+    /**
+     * Check if a file is fingerprinted (according to its extension).
+     *
+     * @param path The path of the file
+     * @return true = the file is fingerprinted, false = the file keeps its name
+     */
+    public boolean isFingerprinted(final String path) {
+        return extensions.contains(getExtension(path));
+    }
+
+
+    /**
+     * Check if a file is a stylesheet. The links in stylesheets are changed, so stylesheets are not simply copied.
+     *
+     * @param path The path of the file
+     * @return true = the file is a stylesheet, false = the file is no stylesheet
+     */
+    public static boolean isStylesheet(final String path) {
+        return "css".equals(getExtension(path));
+    }
+
+
+    /**
+     * Add a fingerprinted file to the map.
+     *
+     * @param path The original path of the file, relative to the blog directory
+     * @param hash The hash of the content of the file
+     * @return The fingerprinted path of the file, relative to the blog directory
+     */
+    public String addAsset(final String path, final String hash) {
+        final int slash = path.lastIndexOf('/');
+        final int dot = path.lastIndexOf('.');
+        final String fingerprint = hash.substring(0, Math.min(HASH_LENGTH, hash.length()));
+
+        final String fingerprinted;
+        if (dot > slash + 1) {
+            fingerprinted = path.substring(0, dot) + '.' + fingerprint + path.substring(dot);
+        } else {
+            fingerprinted = path + '.' + fingerprint;
+        }
+        assets.put(path, fingerprinted);
+        return fingerprinted;
+    }
+
+
+    /**
+     * Get the fingerprint of the whole map: a hash over all original and fingerprinted paths. The fingerprint changes
+     * whenever a fingerprinted file changes, so it can be used as input for incremental builds.
+     *
+     * @return The fingerprint of the map; an empty string if the map is empty
+     */
+    public String getFingerprint() {
+        if (assets.isEmpty()) {
+            return "";
+        }
+
+        final StringBuilder builder = new StringBuilder();
+        for (final Map.Entry<String, String> entry : new TreeMap<String, String>(assets).entrySet()) {
+            builder.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        return Tools.getHash(builder.toString());
+    }
+
+
+    /**
+     * Change all links to fingerprinted files in an HTML file (see Tools.mapLinks()). Relative links and absolute
+     * links that start with the base URL of the blog are changed; only the name of the file in the link is replaced.
+     *
+     * @param html The content of the HTML file
+     * @param page The path of the HTML file, relative to the blog directory
+     * @return The content with changed links
+     */
+    public String rewriteLinks(final String html, final String page) {
+        final String directory = page.substring(0, page.lastIndexOf('/') + 1);
+        return Tools.mapLinks(html, link -> rewriteLink(link, directory));
+    }
+
+
+    /**
+     * Change all links to fingerprinted files in a stylesheet. The links are the values of url() references.
+     *
+     * @param css The content of the stylesheet
+     * @param stylesheet The path of the stylesheet, relative to the blog directory
+     * @return The content with changed links
+     */
+    public String rewriteCss(final String css, final String stylesheet) {
+        final String directory = stylesheet.substring(0, stylesheet.lastIndexOf('/') + 1);
+        return mapUrls(css, link -> rewriteLink(link, directory));
+    }
+
+
+    /**
+     * Get all files that are referenced in a stylesheet by url() references.
+     *
+     * @param css The content of the stylesheet
+     * @param stylesheet The path of the stylesheet, relative to the blog directory
+     * @return The paths of the referenced files, relative to the blog directory
+     */
+    public Set<String> getReferences(final String css, final String stylesheet) {
+        final String directory = stylesheet.substring(0, stylesheet.lastIndexOf('/') + 1);
+        final Set<String> references = new HashSet<String>();
+        mapUrls(css, link -> {
+            final String path = resolve(link, directory);
+            if (path != null) {
+                references.add(path);
+            }
+            return link;
+        });
+        return references;
+    }
+
+
+    /**
+     * Change a single link to a fingerprinted file. A query or fragment of the link is kept.
+     *
+     * @param link The link to change
+     * @param directory The directory of the file that contains the link, relative to the blog directory
+     * @return The changed link; the link itself if it does not refer to a fingerprinted file
+     */
+    private String rewriteLink(final String link, final String directory) {
+        final String path = resolve(link, directory);
+        final String asset = path == null ? null : assets.get(path);
+        if (asset == null) {
+            return link;
+        }
+
+        final int end = getPathEnd(link);
+        final int slash = link.lastIndexOf('/', end - 1);
+        return link.substring(0, slash + 1) + asset.substring(asset.lastIndexOf('/') + 1) + link.substring(end);
+    }
+
+
+    /**
+     * Resolve a link to the path of a file in the blog directory.
+     *
+     * @param link The link to resolve
+     * @param directory The directory of the file that contains the link, relative to the blog directory
+     * @return The path of the file, relative to the blog directory; null if the link points outside of the blog
+     */
+    private String resolve(final String link, final String directory) {
+        final String path = link.substring(0, getPathEnd(link));
+        if (path.startsWith(baseurl)) {
+            return normalize(path.substring(baseurl.length()));
+        }
+        if (path.isEmpty() || path.charAt(0) == '/' || path.indexOf(':') >= 0) {
+            return null;
+        }
+        return normalize(directory + path);
+    }
+
+
+    /**
+     * Get the end of the path in a link, i.e. the start of its query or fragment.
+     *
+     * @param link The link
+     * @return The end of the path in the link
+     */
+    private static int getPathEnd(final String link) {
+        for (int i = 0; i < link.length(); i++) {
+            if (link.charAt(i) == '?' || link.charAt(i) == '#') {
+                return i;
+            }
+        }
+        return link.length();
+    }
+
+
+    /**
+     * Normalize a relative path: remove all . and .. parts.
+     *
+     * @param path The path to normalize
+     * @return The normalized path; null if the path points outside of the blog directory
+     */
+    private static String normalize(final String path) {
+        final Deque<String> parts = new ArrayDeque<String>();
+        for (final String part : path.split("/")) {
+            if ("..".equals(part)) {
+                if (parts.isEmpty()) {
+                    return null;
+                }
+                parts.removeLast();
+            } else if (!part.isEmpty() && !".".equals(part)) {
+                parts.addLast(part);
+            }
+        }
+        return String.join("/", parts);
+    }
+
+
+    /**
+     * Get the extension of a file (in lower case).
+     *
+     * @param path The path of the file
+     * @return The extension of the file; an empty string if the file has no extension
+     */
+    private static String getExtension(final String path) {
+        final int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') ? path.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+
+    /**
+     * Change all url() references in a stylesheet. The value of a reference may be enclosed in quotes.
+     *
+     * @param css The content of the stylesheet
+     * @param mapper The function that changes a single link; returns the link itself to leave it unchanged
+     * @return The content with changed links
+     */
+    private static String mapUrls(final String css, final UnaryOperator<String> mapper) {
+        final StringBuilder result = new StringBuilder(css.length());
+        int copied = 0;
+
+        int position = css.indexOf(URL_START);
+        while (position >= 0) {
+            int start = position + URL_START.length();
+            while (start < css.length() && Character.isWhitespace(css.charAt(start))) {
+                start++;
+            }
+
+            int end;
+            if (start < css.length() && (css.charAt(start) == '"' || css.charAt(start) == '\'')) {
+                end = css.indexOf(css.charAt(start), start + 1);
+                start++;
+            } else {
+                end = css.indexOf(')', start);
+                while (end > start && Character.isWhitespace(css.charAt(end - 1))) {
+                    end--;
+                }
+            }
+            if (end < 0) {
+                break;
+            }
+
+            result.append(css, copied, start).append(mapper.apply(css.substring(start, end)));
+            copied = end;
+            position = css.indexOf(URL_START, end);
+        }
+
+        result.append(css, copied, css.length());
+        return result.toString();
+    }
+
+}
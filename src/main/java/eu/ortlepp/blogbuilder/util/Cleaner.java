@@ -10,6 +10,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -28,6 +30,9 @@ public final class Cleaner extends SimpleFileVisitor<Path> {
     /** A list of files that are ignored (= not deleted). */
     private final String[] ignore;
 
+    /** Files that are kept (= not deleted) in addition to the ignored files; absolute and normalized paths. */
+    private final Set<Path> keep;
+
 
     /**
      * Constructor, initializes the cleaning process.
@@ -35,8 +40,31 @@ public final class Cleaner extends SimpleFileVisitor<Path> {
      * @param directory The project directory whose "Blog" directory should be cleaned
      */
     public Cleaner(final String directory) {
+        this(Paths.get(directory, Directories.BLOG.toString()));
+    }
+
+
+    /**
+     * Constructor, initializes the cleaning process.
+     *
+     * @param startdir The directory which should be cleaned (e.g. a staging directory)
+     */
+    public Cleaner(final Path startdir) {
+        this(startdir, Collections.emptySet());
+    }
+
+
+    /**
+     * Constructor, initializes the cleaning process. The given files are kept, so the directory can be cleaned after
+     * a build to remove all files that were not produced by the build.
+     *
+     * @param startdir The directory which should be cleaned (e.g. a staging directory)
+     * @param keep Files that are kept in addition to the ignored files; absolute and normalized paths
+     */
+    public Cleaner(final Path startdir, final Set<Path> keep) {
         super();
-        startdir = Paths.get(directory, Directories.BLOG.toString());
+        this.startdir = startdir;
+        this.keep = keep;
         ignore = Config.INSTANCE.getCleanIgnore();
     }
 
@@ -57,7 +85,7 @@ public final class Cleaner extends SimpleFileVisitor<Path> {
 
 
     /**
-     * Visiting a file: Delete the file if it is not on the ignore list.
+     * Visiting a file: Delete the file if it is not on the ignore list and not one of the files to keep.
      *
      * @param file The visited file itself
      * @param attrs The attributes of the file
@@ -66,7 +94,7 @@ public final class Cleaner extends SimpleFileVisitor<Path> {
      */
     @Override
     public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-        if (!isOnIgnoreList(file.getFileName())) {
+        if (!isOnIgnoreList(file.getFileName()) && !keep.contains(file.toAbsolutePath().normalize())) {
             Files.deleteIfExists(file);
         }
         return FileVisitResult.CONTINUE;
@@ -0,0 +1,278 @@
+package eu.ortlepp.blogbuilder.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a compressed copy (file.html.gz) next to each text file of the built blog, so a web server can deliver the
+ * compressed file instead of compressing the file for each request (e.g. gzip_static of nginx). The files are
+ * compressed with the best compression by a pool of threads. Each compressed file gets the last modification time of
+ * its file, so a compressed file whose file is unchanged is not compressed again. A file that was written again is
+ * only compressed again if its content changed: the existing compressed file is decompressed and compared, which is
+ * much faster than the compression.
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class Compressor implements AutoCloseable {
+
+    /** A logger to write out messages to the user. */
+    private static final Logger LOGGER = Logger.getLogger(Compressor.class.getName());
+
+    /** The extension of the compressed files. */
+    public static final String EXTENSION = ".gz";
+
+    /** The extensions of the text files that are compressed. */
+    private static final Set<String> TEXT_EXTENSIONS = new HashSet<String>(
+            Arrays.asList("html", "htm", "xml", "css", "js", "json", "svg", "txt"));
+
+    /** The maximum number of files per thread that wait to be compressed. */
+    private static final int QUEUE_SIZE = 16;
+
+    /** The size of the buffer of the compression. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The minimum size of a compressed file: gzip header (10 bytes) and trailer (8 bytes). */
+    private static final int TRAILER_SIZE = 18;
+
+    /** The thread pool to compress the files. */
+    private final ThreadPoolExecutor executor;
+
+    /** The number of files that were compressed. */
+    private final AtomicInteger compressed;
+
+    /** The number of compressed files that are unchanged because the content of their files is unchanged. */
+    private final AtomicInteger unchanged;
+
+    /** The first error while compressing a file; null if there was no error. */
+    private final AtomicReference<IOException> error;
+
+
+    /**
+     * Constructor, starts the thread pool.
+     *
+     * @param threads The number of threads to compress the files
+     */
+    public Compressor(final int threads) {
+        final int size = Math.max(threads, 1);
+        executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(size * QUEUE_SIZE), runnable -> {
+                    final Thread thread = new Thread(runnable, "blogbuilder-compressor");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        compressed = new AtomicInteger();
+        unchanged = new AtomicInteger();
+        error = new AtomicReference<IOException>();
+    }
+
+
+    /**
+     * Check if a file is a text file that is compressed (according to its extension).
+     *
+     * @param file The file to check
+     * @return true = the file is compressed, false = the file is not compressed
+     */
+    public static boolean isText(final Path file) {
+        final String name = Tools.getFilenameFromPath(file);
+        final int dot = name.lastIndexOf('.');
+        return dot >= 0 && TEXT_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+
+    /**
+     * Get the compressed file of a file.
+     *
+     * @param file The file
+     * @return The compressed file
+     */
+    public static Path getCompressedFile(final Path file) {
+        return file.resolveSibling(Tools.getFilenameFromPath(file) + EXTENSION);
+    }
+
+
+    /**
+     * Compress a file in the thread pool. If the file is unchanged, it is only compressed if its compressed file is
+     * missing or has a different last modification time. In any case, it is not compressed again if its compressed
+     * file contains the same content; the compressed file only gets the last modification time of the file then.
+     *
+     * @param file The file to compress
+     * @param data The content of the file; null if the file has to be read
+     * @param changed Flag for the file; true = the file was written, false = the file is unchanged
+     */
+    public void compress(final Path file, final byte[] data, final boolean changed) {
+        executor.execute(() -> {
+            try {
+                if (!changed && isCompressed(file)) {
+                    unchanged.incrementAndGet();
+                } else if (isSameContent(file, data)) {
+                    Files.setLastModifiedTime(getCompressedFile(file), Files.getLastModifiedTime(file));
+                    unchanged.incrementAndGet();
+                } else {
+                    writeCompressedFile(file, data);
+                    compressed.incrementAndGet();
+                }
+            } catch (IOException ex) {
+                LOGGER.severe(String.format("Compressing %s failed: %s", file.getFileName(), ex.getMessage()));
+                error.compareAndSet(null, ex);
+            }
+        });
+    }
+
+
+    /**
+     * Wait until all files are compressed. Has to be called after all files are written.
+     */
+    public void finish() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Compressing files was interrupted", ex);
+        }
+
+        if (error.get() != null) {
+            throw new RuntimeException(error.get());
+        }
+        LOGGER.info(String.format("%d files compressed, %d compressed files unchanged", compressed.get(),
+                unchanged.get()));
+    }
+
+
+    /**
+     * Shut down the thread pool, files that wait to be compressed are dropped. Does nothing if finish() was called.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+
+    /**
+     * Check if the compressed file of a file is up to date: it exists and has the last modification time of the file.
+     *
+     * @param file The file
+     * @return true = the compressed file is up to date, false = the file has to be compressed
+     * @throws IOException Error while reading the last modification times
+     */
+    private static boolean isCompressed(final Path file) throws IOException {
+        try {
+            return Files.getLastModifiedTime(getCompressedFile(file)).equals(Files.getLastModifiedTime(file));
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Check if the compressed file of a file contains the content of the file. The size of the content is taken from
+     * the end of the compressed file (gzip trailer) and compared first; only if it matches, the compressed file is
+     * decompressed and compared with the content.
+     *
+     * @param file The file
+     * @param data The content of the file; null if the file has to be read
+     * @return true = the compressed file contains the content of the file, false = the file has to be compressed
+     * @throws IOException Error while reading the files
+     */
+    private static boolean isSameContent(final Path file, final byte[] data) throws IOException {
+        final Path target = getCompressedFile(file);
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ)) {
+            if (channel.size() < TRAILER_SIZE) {
+                return false;
+            }
+            final ByteBuffer trailer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (trailer.hasRemaining()
+                    && channel.read(trailer, channel.size() - Integer.BYTES + trailer.position()) > 0) {
+                /* Read until the size of the content is complete */
+            }
+            final long size = data == null ? Files.size(file) : data.length;
+            if (trailer.hasRemaining() || trailer.getInt(0) != (int) size) {
+                return false;
+            }
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+
+        try (InputStream compressedInput = new GZIPInputStream(Files.newInputStream(target), BUFFER_SIZE);
+                InputStream input = data == null ? Files.newInputStream(file) : new ByteArrayInputStream(data)) {
+            return OutputFiles.isSameContent(input, compressedInput);
+        } catch (ZipException | EOFException ex) {
+            /* A broken compressed file is written again */
+            return false;
+        }
+    }
+
+
+    /**
+     * Write the compressed file of a file. The compressed file is written to a temporary file first, then it gets
+     * the last modification time of the file and replaces the compressed file.
+     *
+     * @param file The file to compress
+     * @param data The content of the file; null if the file has to be read
+     * @throws IOException Error while compressing the file
+     */
+    private static void writeCompressedFile(final Path file, final byte[] data) throws IOException {
+        final Path target = getCompressedFile(file);
+        final Path temp = Tools.getTempFile(target);
+        final FileTime modified = Files.getLastModifiedTime(file);
+
+        try (OutputStream output = new BestGzipOutputStream(Files.newOutputStream(temp))) {
+            if (data == null) {
+                Files.copy(file, output);
+            } else {
+                output.write(data);
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+
+        Files.setLastModifiedTime(temp, modified);
+        Tools.replaceFile(temp, target);
+    }
+
+
+    /**
+     * A gzip stream with the best compression.
+     */
+    private static final class BestGzipOutputStream extends GZIPOutputStream {
+
+        /**
+         * Constructor, initializes the stream with the best compression.
+         *
+         * @param output The stream for the compressed data
+         * @throws IOException Error while writing the gzip header
+         */
+        BestGzipOutputStream(final OutputStream output) throws IOException {
+            super(output, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+
+    }
+
+}
@@ -0,0 +1,394 @@
+package eu.ortlepp.blogbuilder.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A helper for writing the files of the built blog. All files are written to a temporary file first that replaces the
+ * file when it is complete (see Tools.replaceFile()). If the comparison of files is enabled, a file is only replaced
+ * if its content changed: the size is compared first, then the content. Unchanged files keep their last modification
+ * time, so tools like rsync or a CDN do not treat them as changed. If a compressor is set, a compressed copy of each
+ * text file is written as well (see Compressor).
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class OutputFiles {
+
+    /** A logger to write out messages to the user. */
+    private static final Logger LOGGER = Logger.getLogger(OutputFiles.class.getName());
+
+    /** The size of the buffers for comparing files. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Flag for the comparison of files; true = only changed files are written, false = all files are written. */
+    private final boolean compare;
+
+    /** All files that were written or found unchanged; absolute and normalized paths. */
+    private final Set<Path> files;
+
+    /** The number of files that were written. */
+    private final AtomicInteger written;
+
+    /** The number of files that were not written because they are unchanged. */
+    private final AtomicInteger unchanged;
+
+    /** Flag for hard links; false after a hard link failed (e.g. because the files are on different filesystems). */
+    private volatile boolean linkSupported;
+
+    /** The compressor for the text files; null if no compressed files are written. */
+    private final Compressor compressor;
+
+
+    /**
+     * Constructor, initializes the helper.
+     *
+     * @param compare Flag for the comparison of files; true = only changed files are written, false = all files are
+     *     written
+     */
+    public OutputFiles(final boolean compare) {
+        this(compare, null);
+    }
+
+
+    /**
+     * Constructor, initializes the helper.
+     *
+     * @param compare Flag for the comparison of files; true = only changed files are written, false = all files are
+     *     written
+     * @param compressor The compressor for the text files; null if no compressed files are written
+     */
+    public OutputFiles(final boolean compare, final Compressor compressor) {
+        this.compare = compare;
+        this.compressor = compressor;
+        this.files = ConcurrentHashMap.newKeySet();
+        this.written = new AtomicInteger();
+        this.unchanged = new AtomicInteger();
+        this.linkSupported = true;
+    }
+
+
+    /**
+     * Write a file. If the comparison of files is enabled, the file is only written if its content changed.
+     *
+     * @param file The file to write
+     * @param data The content of the file
+     * @return Result flag: true = the file was written, false = the file is unchanged
+     * @throws IOException Error while writing the file
+     */
+    public boolean write(final Path file, final byte[] data) throws IOException {
+        return compare ? writeIfChanged(file, data) : writeFile(file, data);
+    }
+
+
+    /**
+     * Write a file only if its content changed, regardless of the comparison of files.
+     *
+     * @param file The file to write
+     * @param data The content of the file
+     * @return Result flag: true = the file was written, false = the file is unchanged
+     * @throws IOException Error while writing the file
+     */
+    public boolean writeIfChanged(final Path file, final byte[] data) throws IOException {
+        files.add(file.toAbsolutePath().normalize());
+        if (isSameContent(data, file)) {
+            unchanged.incrementAndGet();
+            compress(file, data, false);
+            return false;
+        }
+        return writeFile(file, data);
+    }
+
+
+    /**
+     * Replace a file with a temporary file that was written completely (see Tools.getTempFile()). If the comparison
+     * of files is enabled and the content did not change, the temporary file is deleted instead.
+     *
+     * @param temp The temporary file with the new content
+     * @param file The file to replace
+     * @return Result flag: true = the file was replaced, false = the file is unchanged
+     * @throws IOException Error while replacing the file
+     */
+    public boolean replace(final Path temp, final Path file) throws IOException {
+        files.add(file.toAbsolutePath().normalize());
+        if (compare && isSameContent(temp, file)) {
+            Files.delete(temp);
+            unchanged.incrementAndGet();
+            compress(file, null, false);
+            return false;
+        }
+
+        Tools.replaceFile(temp, file);
+        written.incrementAndGet();
+        compress(file, null, true);
+        return true;
+    }
+
+
+    /**
+     * Copy a file. If the comparison of files is enabled, the file is only copied if its content changed.
+     *
+     * @param source The file to copy
+     * @param file The copy of the file
+     * @return Result flag: true = the file was copied, false = the file is unchanged
+     * @throws IOException Error while copying the file
+     */
+    public boolean copy(final Path source, final Path file) throws IOException {
+        return copy(source, file, false);
+    }
+
+
+    /**
+     * Copy a file or create a hard link to it. If the comparison of files is enabled, the file is only copied if its
+     * content changed. The data of a copy is transferred by the filesystem (without passing it through the Java heap)
+     * and the copy gets the last modification time of the file, so it can be recognized as unchanged later. If a
+     * hard link cannot be created (e.g. because the files are on different filesystems), the file is copied.
+     *
+     * @param source The file to copy
+     * @param file The copy of the file
+     * @param link Flag for hard links; true = create a hard link, false = copy the file
+     * @return Result flag: true = the file was copied, false = the file is unchanged
+     * @throws IOException Error while copying the file
+     */
+    public boolean copy(final Path source, final Path file, final boolean link) throws IOException {
+        files.add(file.toAbsolutePath().normalize());
+        if (compare && isSameContent(source, file)) {
+            unchanged.incrementAndGet();
+            compress(file, null, false);
+            return false;
+        }
+
+        final Path temp = Tools.getTempFile(file);
+        Files.deleteIfExists(temp);
+        if (!link || !createLink(source, temp)) {
+            transfer(source, temp);
+        }
+        Tools.replaceFile(temp, file);
+        written.incrementAndGet();
+        compress(file, null, true);
+        return true;
+    }
+
+
+    /**
+     * Keep a file that is known to be unchanged (e.g. a copy with the same size and last modification time as the
+     * original file) without reading or writing it.
+     *
+     * @param file The unchanged file
+     * @throws IOException Error while handling the compressed copy of the file
+     */
+    public void keep(final Path file) throws IOException {
+        files.add(file.toAbsolutePath().normalize());
+        unchanged.incrementAndGet();
+        compress(file, null, false);
+    }
+
+
+    /**
+     * Getter for the flag for the comparison of files.
+     *
+     * @return true = only changed files are written, false = all files are written
+     */
+    public boolean isCompare() {
+        return compare;
+    }
+
+
+    /**
+     * Getter for all files that were written or found unchanged.
+     *
+     * @return The files that were written or found unchanged; absolute and normalized paths
+     */
+    public Set<Path> getFiles() {
+        return files;
+    }
+
+
+    /**
+     * Write out the number of written and unchanged files. Has to be called after all files are written.
+     */
+    public void logSummary() {
+        LOGGER.info(String.format("%d files written, %d files unchanged", written.get(), unchanged.get()));
+    }
+
+
+    /**
+     * Write a file, replacing the file when it is complete.
+     *
+     * @param file The file to write
+     * @param data The content of the file
+     * @return Always true: the file was written
+     * @throws IOException Error while writing the file
+     */
+    private boolean writeFile(final Path file, final byte[] data) throws IOException {
+        files.add(file.toAbsolutePath().normalize());
+        Tools.writeFile(file, data);
+        written.incrementAndGet();
+        compress(file, data, true);
+        return true;
+    }
+
+
+    /**
+     * Write the compressed copy of a text file (see Compressor). Without a compressor, an existing compressed copy
+     * of a written text file is deleted, so it never delivers outdated content.
+     *
+     * @param file The text file
+     * @param data The content of the text file; null if the file has to be read
+     * @param changed Flag for the file; true = the file was written, false = the file is unchanged
+     * @throws IOException Error while deleting an outdated compressed copy
+     */
+    private void compress(final Path file, final byte[] data, final boolean changed) throws IOException {
+        if (!Compressor.isText(file)) {
+            return;
+        }
+
+        final Path compressed = Compressor.getCompressedFile(file);
+        if (compressor != null) {
+            files.add(compressed.toAbsolutePath().normalize());
+            compressor.compress(file, data, changed);
+        } else if (changed) {
+            Files.deleteIfExists(compressed);
+        }
+    }
+
+
+    /**
+     * Create a hard link to a file. If a hard link fails once, no further hard links are created.
+     *
+     * @param source The file to link to
+     * @param link The hard link to create
+     * @return Success flag: true = the hard link was created, false = hard links are not supported
+     */
+    private boolean createLink(final Path source, final Path link) {
+        if (linkSupported) {
+            try {
+                Files.createLink(link, source);
+                return true;
+            } catch (UnsupportedOperationException | IOException ex) {
+                linkSupported = false;
+                LOGGER.warning(String.format("Creating hard links failed, files are copied: %s", ex.getMessage()));
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Copy the content of a file to another file with a channel transfer, then set the last modification time of
+     * the copy to the one of the file.
+     *
+     * @param source The file to copy
+     * @param copy The copy of the file
+     * @throws IOException Error while copying the file
+     */
+    private static void transfer(final Path source, final Path copy) throws IOException {
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel output = FileChannel.open(copy, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            final long size = input.size();
+            long position = 0;
+            long transferred = 1;
+            while (position < size && transferred > 0) {
+                transferred = input.transferTo(position, size - position, output);
+                position += transferred;
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(copy);
+            throw ex;
+        }
+        Files.setLastModifiedTime(copy, Files.getLastModifiedTime(source));
+    }
+
+
+    /**
+     * Compare new content with the content of an existing file.
+     *
+     * @param data The new content
+     * @param file The existing file
+     * @return Result of the comparison: true = the file exists and has the same content, false = it does not
+     * @throws IOException Error while reading the file
+     */
+    private static boolean isSameContent(final byte[] data, final Path file) throws IOException {
+        try {
+            return Files.size(file) == data.length && Arrays.equals(data, Files.readAllBytes(file));
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Compare the content of two files. The sizes are compared first, the content is compared in blocks.
+     *
+     * @param first The first file
+     * @param second The second file
+     * @return Result of the comparison: true = both files exist and have the same content, false = they do not
+     * @throws IOException Error while reading the files
+     */
+    private static boolean isSameContent(final Path first, final Path second) throws IOException {
+        try {
+            if (Files.size(first) != Files.size(second)) {
+                return false;
+            }
+
+            try (InputStream input1 = Files.newInputStream(first); InputStream input2 = Files.newInputStream(second)) {
+                return isSameContent(input1, input2);
+            }
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Compare the content of two streams in blocks.
+     *
+     * @param first The first stream
+     * @param second The second stream
+     * @return Result of the comparison: true = both streams have the same content, false = they do not
+     * @throws IOException Error while reading the streams
+     */
+    static boolean isSameContent(final InputStream first, final InputStream second) throws IOException {
+        final byte[] buffer1 = new byte[BUFFER_SIZE];
+        final byte[] buffer2 = new byte[BUFFER_SIZE];
+        int read = readBlock(first, buffer1);
+        while (read > 0) {
+            if (readBlock(second, buffer2) != read || !Arrays.equals(buffer1, buffer2)) {
+                return false;
+            }
+            read = readBlock(first, buffer1);
+        }
+        return readBlock(second, buffer2) == 0;
+    }
+
+
+    /**
+     * Read a block from a stream. The buffer is filled completely, unless the end of the stream is reached; the rest
+     * of the buffer is filled with zeros in this case.
+     *
+     * @param input The stream to read from
+     * @param buffer The buffer for the block
+     * @return The number of bytes read; 0 at the end of the stream
+     * @throws IOException Error while reading from the stream
+     */
+    private static int readBlock(final InputStream input, final byte[] buffer) throws IOException {
+        int total = 0;
+        int read = input.read(buffer, 0, buffer.length);
+        while (read > 0) {
+            total += read;
+            read = input.read(buffer, total, buffer.length - total);
+        }
+        Arrays.fill(buffer, total, buffer.length, (byte) 0);
+        return total;
+    }
+
+}
@@ -1,18 +1,42 @@
 package eu.ortlepp.blogbuilder.util;
 
+import eu.ortlepp.blogbuilder.util.config.Config;
 import eu.ortlepp.blogbuilder.util.config.Directories;
+import eu.ortlepp.blogbuilder.util.incremental.Manifest;
+import eu.ortlepp.blogbuilder.util.incremental.ResourceHashes;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 /**
- * A tool class to copy the contents from the resources directory to the directory with the built blog.
+ * A tool class to copy the contents from the resources directory to the directory with the built blog. The resource
+ * files are synchronized: a file is only copied if the target file does not exist or differs in size or last
+ * modification time (copies get the last modification time of their source). Optionally, hard links are created
+ * instead of copies. The files are copied by a pool of threads.
+ *
+ * <p>If fingerprinting is enabled, resource files with the configured extensions get the hash of their content in their
+ * names and are added to the asset map. Stylesheets are copied last: their links to fingerprinted files are changed
+ * before they are written (and fingerprinted themselves).</p>
  *
  * @author Thorsten Ortlepp
  */
@@ -21,6 +45,9 @@ public final class ResourceCopy extends SimpleFileVisitor<Path> {
     /** A logger to write out messages to the user. */
     private static final Logger LOGGER = Logger.getLogger(ResourceCopy.class.getName());
 
+    /** The maximum number of resource files per thread that wait to be copied. */
+    private static final int QUEUE_SIZE = 16;
+
     /** The source directory (where the files are copied from). */
     private final Path source;
 
@@ -28,7 +55,31 @@ public final class ResourceCopy extends SimpleFileVisitor<Path> {
     private final Path target;
 
     /** A counter for all successfully copied files. */
-    private int counter;
+    private final AtomicInteger counter;
+
+    /** The build manifest; all resource files are recorded as output files. */
+    private final Manifest manifest;
+
+    /** The helper for writing the files of the built blog. */
+    private final OutputFiles outputFiles;
+
+    /** The number of threads to copy the files. */
+    private final int threads;
+
+    /** The thread pool to copy the files; null if only one thread is used. */
+    private ExecutorService executor;
+
+    /** The first error while copying a file in the thread pool; null if there was no error. */
+    private final AtomicReference<IOException> error;
+
+    /** The map of the fingerprinted resource files, filled while the files are copied. */
+    private final AssetMap assets;
+
+    /** The cache for the content hashes of the resource files; null if fingerprinting is disabled. */
+    private final ResourceHashes hashes;
+
+    /** The stylesheets that are written after all other files are copied; empty if fingerprinting is disabled. */
+    private final List<Path> stylesheets;
 
 
     /**
@@ -37,31 +88,105 @@ public final class ResourceCopy extends SimpleFileVisitor<Path> {
      * @param directory The project directory which contains the resources and the target directory
      */
     public ResourceCopy(final String directory) {
+        this(directory, new Manifest(directory, false));
+    }
+
+
+    /**
+     * Constructor, initializes the copy process.
+     *
+     * @param directory The project directory which contains the resources and the target directory
+     * @param manifest The build manifest
+     */
+    public ResourceCopy(final String directory, final Manifest manifest) {
+        this(directory, Paths.get(directory, Directories.BLOG.toString()), manifest, new OutputFiles(false), 1,
+                new AssetMap());
+    }
+
+
+    /**
+     * Constructor, initializes the copy process.
+     *
+     * @param directory The project directory which contains the resources
+     * @param target The directory where the blog is built (e.g. a staging directory)
+     * @param manifest The build manifest
+     * @param outputFiles The helper for writing the files of the built blog
+     * @param threads The number of threads to copy the files
+     * @param assets The map of the fingerprinted resource files, filled while the files are copied
+     */
+    public ResourceCopy(final String directory, final Path target, final Manifest manifest,
+            final OutputFiles outputFiles, final int threads, final AssetMap assets) {
         super();
         source = Paths.get(directory, Directories.RESOURCES.toString());
-        target = Paths.get(directory, Directories.BLOG.toString());
-        counter = 0;
+        this.target = target;
+        counter = new AtomicInteger();
+        this.manifest = manifest;
+        this.outputFiles = outputFiles;
+        this.threads = threads;
+        error = new AtomicReference<IOException>();
+        this.assets = assets;
+        hashes = assets.isEnabled() ? new ResourceHashes(directory) : null;
+        stylesheets = Collections.synchronizedList(new ArrayList<Path>());
     }
 
 
     /**
      * Do the copying: Copy all files from the resources directory to the target directory for built blogs. If
-     * necessary copy the directory structure as well. If a file already exists in the target directory it is
-     * skipped.
+     * necessary copy the directory structure as well. Files that are unchanged since they were copied are skipped.
      */
     public void copyResources() {
+        if (threads > 1) {
+            executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(threads * QUEUE_SIZE), new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
         try {
             Files.walkFileTree(source, this);
-            LOGGER.info(String.format("%d resource files copied", counter));
+            if (executor != null) {
+                executor.shutdown();
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                if (error.get() != null) {
+                    throw error.get();
+                }
+            }
+            writeStylesheets();
+            if (hashes != null) {
+                hashes.save();
+            }
+            LOGGER.info(String.format("%d resource files copied", counter.get()));
+
         } catch (IOException ex) {
             LOGGER.severe(String.format("Error while copying resource files: %s", ex.getMessage()));
             throw new RuntimeException(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Copying resource files was interrupted", ex);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
     }
 
 
     /**
-     * Visiting a file: Copy the file from the resources directory to the target directory for the built blog.
+     * Visiting a directory: Create the directory in the target directory for the built blog.
+     *
+     * @param dir The visited directory itself
+     * @param attrs The attributes of the directory
+     * @return The result of the visit: Continue to visit the files and directories inside the directory
+     * @throws IOException Error while creating the directory
+     */
+    @Override
+    public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+        Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+        return FileVisitResult.CONTINUE;
+    }
+
+
+    /**
+     * Visiting a file: Copy the file from the resources directory to the target directory for the built blog. If
+     * more than one thread is used, the file is copied by the thread pool.
      *
      * @param file The visited file itself
      * @param attrs The attributes of the file
@@ -70,28 +195,124 @@ public final class ResourceCopy extends SimpleFileVisitor<Path> {
      */
     @Override
     public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-        /* Create full target path */
-        Path temp = target.relativize(file);
-        temp = temp.subpath(2, temp.getNameCount());
-        temp = Paths.get(target.toString(), temp.toString());
-
-        if (Files.exists(temp)) {
-            LOGGER.warning(String.format("Resource file %s already exists, file not copied",
-                    Tools.getFilenameFromPath(temp)));
+        if (executor == null) {
+            copyFile(file, attrs);
         } else {
+            executor.execute(() -> {
+                try {
+                    copyFile(file, attrs);
+                } catch (IOException ex) {
+                    error.compareAndSet(null, ex);
+                }
+            });
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+
+    /**
+     * Copy a file from the resources directory to the target directory for the built blog, unless the target file
+     * has the same size and last modification time as the file. If fingerprinting is enabled, stylesheets are kept
+     * for later and fingerprinted files are copied with the hash of their content in their names.
+     *
+     * @param file The file to copy
+     * @param attrs The attributes of the file
+     * @throws IOException Error while copying the file
+     */
+    private void copyFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+        final String path = source.relativize(file).toString().replaceAll("\\\\", "/");
+        if (assets.isEnabled() && AssetMap.isStylesheet(path)) {
+            stylesheets.add(file);
+            return;
+        }
+
+        /* Create full target path (with the hash of the content for fingerprinted files) */
+        final String output = assets.isFingerprinted(path)
+                ? assets.addAsset(path, hashes.getHash(file, path, attrs)) : path;
+        final Path temp = target.resolve(output);
+
+        /* The fingerprint of a resource file consists of its size and last modification time */
+        final String fingerprint = manifest.createFingerprint(Long.toString(attrs.size()),
+                Long.toString(attrs.lastModifiedTime().toMillis()));
+
+        if (isUnchanged(temp, attrs)) {
+            outputFiles.keep(temp);
+        } else if (outputFiles.copy(file, temp, Config.INSTANCE.isResourcesLink())) {
+            counter.incrementAndGet();
+            LOGGER.info(String.format("Resource file %s copied", Tools.getFilenameFromPath(temp)));
+        }
+        manifest.addOutput(output, fingerprint);
+    }
+
+
+    /**
+     * Write all stylesheets. Stylesheets that are referenced by other stylesheets are written first, so the links to
+     * fingerprinted stylesheets can be changed as well.
+     *
+     * @throws IOException Error while writing a stylesheet
+     */
+    private void writeStylesheets() throws IOException {
+        final Map<String, Path> pending = new TreeMap<String, Path>();
+        for (final Path stylesheet : stylesheets) {
+            pending.put(source.relativize(stylesheet).toString().replaceAll("\\\\", "/"), stylesheet);
+        }
 
-            /* Check parent because it could be null when the path does not contain a parent */
-            final Path tmpParent = temp.getParent();
-            if (tmpParent != null) {
-                /* Create folders and copy file */
-                Files.createDirectories(tmpParent);
-                Files.copy(file, temp);
-                counter++;
-                LOGGER.info(String.format("Resource file %s copied", Tools.getFilenameFromPath(temp)));
+        while (!pending.isEmpty()) {
+            writeStylesheet(pending.keySet().iterator().next(), pending, new HashSet<String>());
+        }
+    }
+
+
+    /**
+     * Write a stylesheet: change the links to fingerprinted files and fingerprint the stylesheet itself if
+     * necessary. Like the other resource files, the stylesheet is only written if it changed. The stylesheets it
+     * references are written first; circular references are left unchanged.
+     *
+     * @param path The path of the stylesheet, relative to the resources directory
+     * @param pending The stylesheets that are not written yet
+     * @param visiting The stylesheets whose references are being written
+     * @throws IOException Error while writing the stylesheet
+     */
+    private void writeStylesheet(final String path, final Map<String, Path> pending, final Set<String> visiting)
+            throws IOException {
+        visiting.add(path);
+        final String css = new String(Files.readAllBytes(pending.get(path)), StandardCharsets.UTF_8);
+        for (final String reference : assets.getReferences(css, path)) {
+            if (pending.containsKey(reference) && !visiting.contains(reference)) {
+                writeStylesheet(reference, pending, visiting);
             }
         }
 
-        return FileVisitResult.CONTINUE;
+        final byte[] data = assets.rewriteCss(css, path).getBytes(StandardCharsets.UTF_8);
+        final String hash = Tools.getHash(data);
+        final String output = assets.isFingerprinted(path) ? assets.addAsset(path, hash) : path;
+        final Path file = target.resolve(output);
+
+        Files.createDirectories(file.getParent());
+        if (outputFiles.writeIfChanged(file, data)) {
+            counter.incrementAndGet();
+            LOGGER.info(String.format("Resource file %s copied", Tools.getFilenameFromPath(file)));
+        }
+        manifest.addOutput(output, manifest.createFingerprint(hash));
+        pending.remove(path);
+    }
+
+
+    /**
+     * Check if the copy of a file is unchanged: it has the same size and last modification time as the file.
+     *
+     * @param copy The copy of the file in the target directory
+     * @param attrs The attributes of the file
+     * @return Result of the check: true = the copy is unchanged, false = the copy is missing or has changed
+     */
+    private boolean isUnchanged(final Path copy, final BasicFileAttributes attrs) {
+        try {
+            final BasicFileAttributes copyAttrs = Files.readAttributes(copy, BasicFileAttributes.class);
+            return copyAttrs.isRegularFile() && copyAttrs.size() == attrs.size()
+                    && copyAttrs.lastModifiedTime().equals(attrs.lastModifiedTime());
+        } catch (IOException ex) {
+            return false;
+        }
     }
 
 }
@@ -2,27 +2,46 @@ package eu.ortlepp.blogbuilder.util;
 
 import eu.ortlepp.blogbuilder.model.Document;
 import eu.ortlepp.blogbuilder.model.DocumentType;
+import eu.ortlepp.blogbuilder.util.config.Config;
 import eu.ortlepp.blogbuilder.util.config.Directories;
+import eu.ortlepp.blogbuilder.util.incremental.Manifest;
+import eu.ortlepp.blogbuilder.util.incremental.SourceEntry;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.time.DateTimeException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
  * A scanner for the "Content" directory. Searches recursively for Markdown files and reads their content.
- * Only files with the extension .md are read, files with other extensions are ignored.
+ * Only files with the extension .md are read, files with other extensions are ignored. The directory tree is walked
+ * once to find the Markdown files, then the files are read and parsed - concurrently if more than one thread is used.
+ * The found documents are always returned in the order in which the files were found.
  *
  * @author Thorsten Ortlepp
  */
@@ -34,25 +53,71 @@ public final class Scanner extends SimpleFileVisitor<Path> {
     /** Pattern for parsing date and time. */
     private static final String DATE_TIME_PATTERN = "yyyy-MM-dd H:mm";
 
+    /** The line break of the platform, used to put the content of a Markdown file together. */
+    private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+
+    /** The size (in bytes) of the buffer for reading the headers of a Markdown file. */
+    private static final int READ_BUFFER = 64 * 1024;
+
+    /** The maximum size (in characters) of a decode buffer that is kept for the next file. */
+    private static final int MAX_DECODE_BUFFER = 1024 * 1024;
+
+    /** The decode buffer of each thread, reused for all files. */
+    private static final ThreadLocal<CharBuffer> DECODE_BUFFER =
+            ThreadLocal.withInitial(() -> CharBuffer.allocate(0));
+
     /** List of scanned documents / files; contains only valid documents. */
     private final List<Document> files;
 
+    /** List of found Markdown files that are not read yet. */
+    private final List<ScanJob> found;
+
     /** Date and time format to parse date and time headers of the Markdown files. */
     private final DateTimeFormatter inputFormat;
 
     /** The directory where the Markdown files are located. Necessary to create relative paths. */
     private final Path dirContent;
 
+    /** The build manifest; unchanged files are restored from the manifest instead of being read. */
+    private final Manifest manifest;
+
+    /** The number of threads to read the Markdown files. */
+    private final int threads;
+
+    /** Flag for lazy content; true = only the headers are kept, the content is read again when needed. */
+    private final boolean lazy;
+
+    /** Files of this size (in bytes) or larger are memory-mapped; 0 = no file is memory-mapped. */
+    private final long mapThreshold;
+
 
     /**
-     * Constructor, initializes the scanner.
+     * Constructor, initializes the scanner. All files are read.
      *
      * @param directory The project directory whose "Content" directory should be read
      */
     public Scanner(final String directory) {
+        this(directory, new Manifest(directory, false), 1);
+    }
+
+
+    /**
+     * Constructor, initializes the scanner. Files that are unchanged since the previous build are restored from the
+     * build manifest, all other files are read.
+     *
+     * @param directory The project directory whose "Content" directory should be read
+     * @param manifest The build manifest
+     * @param threads The number of threads to read the Markdown files
+     */
+    public Scanner(final String directory, final Manifest manifest, final int threads) {
         dirContent = Paths.get(directory, Directories.CONTENT.toString());
         files = new ArrayList<Document>();
+        found = new ArrayList<ScanJob>();
         inputFormat = DateTimeFormatter.ofPattern(DATE_TIME_PATTERN);
+        this.manifest = manifest;
+        this.threads = threads;
+        this.lazy = Config.INSTANCE.isLazy();
+        this.mapThreshold = Config.INSTANCE.getMapThreshold() * 1024L * 1024L;
     }
 
 
@@ -64,51 +129,125 @@ public final class Scanner extends SimpleFileVisitor<Path> {
      */
     public List<Document> scanDirectory() {
         files.clear();
+        found.clear();
         try {
             Files.walkFileTree(dirContent, this);
         } catch (IOException ex) {
             LOGGER.severe(String.format("Scanning %s failed: %s", dirContent.getFileName(), ex.getMessage()));
             throw new RuntimeException(ex);
         }
+
+        final List<Document> documents = scanFiles();
+        for (int i = 0; i < found.size(); i++) {
+            addDocument(found.get(i).file, documents.get(i));
+        }
+
         return files;
     }
 
 
     /**
-     * Visiting a file: If the file extension is .md the file is read. If the file is valid it is added to the list of
-     * read files. After visiting a file visit the next file.
+     * Visiting a file: If the file extension is .md the file is remembered to be read (or restored from the build
+     * manifest if it is unchanged) after the directory tree was walked. After visiting a file visit the next file.
      *
      * @param file The visited file itself
      * @param attrs The attributes of the file
      * @return The result of the visit: Continue to visit other files and directories
-     * @throws IOException Error while reading the file
      */
     @Override
-    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-
+    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
         if (file.toString().endsWith(".md")) {
-            final Document document = readFile(file);
+            found.add(new ScanJob(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+        }
 
-            if (document.isValidDocument()) {
+        return FileVisitResult.CONTINUE;
+    }
 
-                /* Creation date in the future = draft */
-                if (document.getCreated().isAfter(LocalDateTime.now())) {
-                    LOGGER.info(String.format("Draft %s (%s) ignored",
-                            Tools.getFilenameFromPath(file), document.getTitle()));
 
-                } else {
-                    files.add(document);
-                    LOGGER.info(String.format("Found %s (%s)",
-                            Tools.getFilenameFromPath(file), document.getTitle()));
-                }
+    /**
+     * Read all found Markdown files. If only one thread is used, the files are read one by one; otherwise the files
+     * are read concurrently by a thread pool.
+     *
+     * @return The read documents in the same order as the found files; null for invalid documents
+     */
+    private List<Document> scanFiles() {
+        final List<Document> documents = new ArrayList<Document>();
 
-            } else {
-                LOGGER.warning(String.format("File %s is not valid and will be ignored",
-                        Tools.getFilenameFromPath(file)));
+        if (threads <= 1 || found.size() <= 1) {
+            for (final ScanJob job : found) {
+                documents.add(job.call());
             }
+            return documents;
         }
 
-        return FileVisitResult.CONTINUE;
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, found.size()));
+        try {
+            for (final Future<Document> result : executor.invokeAll(found)) {
+                documents.add(result.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Scanning the content files was interrupted", ex);
+        } catch (ExecutionException ex) {
+            LOGGER.severe(String.format("Scanning %s failed: %s", dirContent.getFileName(),
+                    ex.getCause().getMessage()));
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        return documents;
+    }
+
+
+    /**
+     * Read a single Markdown file (or restore it from the build manifest if it is unchanged).
+     *
+     * @param file The file to read
+     * @param size The size of the file
+     * @param lastModified The time of the last modification of the file
+     * @return The document read from the file; null if the document is not valid
+     */
+    private Document scanFile(final Path file, final long size, final long lastModified) {
+        final String key = SourceEntry.getKey(dirContent, file);
+
+        /* Only valid documents are in the manifest, so restored documents need no validation */
+        final SourceEntry entry = manifest.getUnchangedSource(key, size, lastModified);
+        if (entry != null) {
+            manifest.addSource(key, entry);
+            return restoreFile(file, entry);
+        }
+
+        final Document document = readFile(file);
+        if (document.isValidDocument()) {
+            manifest.addSource(key, SourceEntry.of(document, size, lastModified));
+            return document;
+        }
+        return null;
+    }
+
+
+    /**
+     * Add a read document to the list of read files. Invalid documents and drafts are ignored.
+     *
+     * @param file The file of the document
+     * @param document The read document; null if the document is not valid
+     */
+    private void addDocument(final Path file, final Document document) {
+        if (document == null) {
+            LOGGER.warning(String.format("File %s is not valid and will be ignored",
+                    Tools.getFilenameFromPath(file)));
+
+        } else if (document.getCreated().isAfter(LocalDateTime.now())) {
+            /* Creation date in the future = draft */
+            LOGGER.info(String.format("Draft %s (%s) ignored",
+                    Tools.getFilenameFromPath(file), document.getTitle()));
+
+        } else {
+            files.add(document);
+            LOGGER.info(String.format("Found %s (%s)",
+                    Tools.getFilenameFromPath(file), document.getTitle()));
+        }
     }
 
 
@@ -119,14 +258,21 @@ public final class Scanner extends SimpleFileVisitor<Path> {
      * @return The content of the file as Document object
      */
     private Document readFile(final Path file) {
+        if (lazy) {
+            return readHeaders(file);
+        }
+
         final Document document = createDocument(file);
 
         try {
             /* Read the file */
-            final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            final MessageDigest digest = Tools.createDigest();
+            final CharBuffer text = readText(file, 0, digest);
 
             /* Create Document data object */
-            parseContentFile(lines, document);
+            final int contentStart = parseContentFile(text.array(), text.limit(), document);
+            document.setContentOffset(getByteLength(text.array(), contentStart));
+            document.setHash(Tools.getHash(digest));
 
         } catch (IOException ex) {
             LOGGER.severe(String.format("Reading %s failed: %s", Tools.getFilenameFromPath(file), ex.getMessage()));
@@ -136,6 +282,152 @@ public final class Scanner extends SimpleFileVisitor<Path> {
     }
 
 
+    /**
+     * Read the text of a Markdown file, starting at a position. Files that are larger than the configured threshold
+     * are memory-mapped and decoded directly from the mapped buffer, so their bytes are never copied into the heap.
+     *
+     * @param file The file to read
+     * @param offset The position where reading starts
+     * @param digest A message digest that is updated with the read bytes; null if no hash is needed
+     * @return The decoded text; the buffer is only valid until the thread decodes the next file
+     * @throws IOException Error while reading the file
+     */
+    private CharBuffer readText(final Path file, final long offset, final MessageDigest digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = Math.max(channel.size() - offset, 0);
+            final ByteBuffer bytes;
+
+            if (mapThreshold > 0 && size >= mapThreshold) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                channel.position(offset);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    /* Read until the buffer is full or the end of the file is reached */
+                }
+                bytes.flip();
+            }
+
+            if (digest != null) {
+                digest.update(bytes.duplicate());
+            }
+            return decode(bytes);
+        }
+    }
+
+
+    /**
+     * Decode the content of a Markdown file (UTF-8). The text is decoded into a buffer that is reused by all files
+     * read by the same thread (except for very large files).
+     *
+     * @param bytes The content of the file
+     * @return The decoded text; the buffer is only valid until the thread decodes the next file
+     * @throws CharacterCodingException The content is no valid UTF-8
+     */
+    private static CharBuffer decode(final ByteBuffer bytes) throws CharacterCodingException {
+        /* UTF-8 never decodes to more characters than bytes */
+        final int length = bytes.remaining();
+        CharBuffer text = DECODE_BUFFER.get();
+        if (text.capacity() < length) {
+            text = CharBuffer.allocate(length);
+            if (length <= MAX_DECODE_BUFFER) {
+                DECODE_BUFFER.set(text);
+            }
+        }
+        text.clear();
+
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        CoderResult result = decoder.decode(bytes, text, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(text);
+        }
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+
+        text.flip();
+        return text;
+    }
+
+
+    /**
+     * Read the headers of a Markdown file and put them into a Document object. The content is not kept, only its
+     * position in the file is remembered; the content is read again from that position every time it is needed. The
+     * file is still read completely to calculate its hash and to find headers after the beginning of the content, but
+     * only header lines are decoded; all other lines are only scanned for their line breaks.
+     *
+     * @param file The file to read
+     * @return The headers of the file as Document object with lazy content
+     */
+    private Document readHeaders(final Path file) {
+        final Document document = createDocument(file);
+        final MessageDigest digest = Tools.createDigest();
+        final HeaderReader reader = new HeaderReader(document);
+
+        try (InputStream input = Files.newInputStream(file)) {
+            final byte[] buffer = new byte[READ_BUFFER];
+            int read = input.read(buffer);
+            while (read >= 0) {
+                digest.update(buffer, 0, read);
+                for (int i = 0; i < read; i++) {
+                    reader.read(buffer[i]);
+                }
+                read = input.read(buffer);
+            }
+            reader.finish();
+
+            final long offset = reader.getContentOffset();
+            document.setLazyContent(() -> readContent(file, offset), reader.isContentPresent());
+            document.setContentOffset(offset);
+            document.setHash(Tools.getHash(digest));
+
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Reading %s failed: %s", Tools.getFilenameFromPath(file), ex.getMessage()));
+        }
+
+        return document;
+    }
+
+
+    /**
+     * Read the content of a Markdown file, starting at a position. Header lines are skipped.
+     *
+     * @param file The file to read
+     * @param offset The position where the content starts
+     * @return The content of the file
+     */
+    private String readContent(final Path file, final long offset) {
+        try {
+            final CharBuffer text = readText(file, offset, null);
+            return assembleContent(text.array(), 0, text.limit());
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Reading %s failed: %s", Tools.getFilenameFromPath(file), ex.getMessage()));
+            return "";
+        }
+    }
+
+
+    /**
+     * Restore a Markdown file from its entry in the build manifest. The content of the file is not read until it is
+     * needed; then only the content is read, starting at the position recorded in the entry.
+     *
+     * @param file The file to restore
+     * @param entry The entry of the file in the build manifest
+     * @return The restored Document object
+     */
+    private Document restoreFile(final Path file, final SourceEntry entry) {
+        final Document document = createDocument(file);
+        entry.restore(document);
+        final long offset = entry.getContentOffset();
+        if (lazy) {
+            document.setLazyContent(() -> readContent(file, offset), true);
+        } else {
+            document.setContentLoader(() -> readContent(file, offset));
+        }
+        return document;
+    }
+
+
     /**
      * Create a Document data object and initialize it with the correct files and paths.
      *
@@ -162,54 +454,285 @@ public final class Scanner extends SimpleFileVisitor<Path> {
 
 
     /**
-     * Parse the content lines of a Markdown file and add the read content of the file to a Document data object.
+     * Parse the text of a Markdown file and add the headers and the content of the file to a Document data object.
+     * The text is parsed in place: no line is copied, only the header values and the content become strings. If the
+     * content is not interrupted by header lines and its line breaks are the line breaks of the platform, the content
+     * is handed over to the Document as a single slice of the text; otherwise it is put together line by line.
      *
-     * @param lines The content lines of the Markdown file
+     * @param text The text of the Markdown file
+     * @param length The length of the text
      * @param document The Document data object that is related to the file
+     * @return The position in the text where the content starts; the length of the text if there is no content
      */
-    private void parseContentFile(final List<String> lines, final Document document) {
-        for (final String line : lines) {
+    private int parseContentFile(final char[] text, final int length, final Document document) {
+        int contentStart = -1;
+        boolean slice = true;
+
+        int position = 0;
+        while (position < length) {
+            final int end = getLineEnd(text, position, length);
+            final int next = getNextLine(text, end, length);
+
+            /* Trim the line */
+            int start = position;
+            while (start < end && text[start] <= ' ') {
+                start++;
+            }
+            int stop = end;
+            while (stop > start && text[stop - 1] <= ' ') {
+                stop--;
+            }
 
             /* Each header line starts with ;; */
-            if (line.trim().startsWith(";;")) {
-
-                /* Split line to a key-value-pair */
-                final String[] keyvalue = line.trim().substring(2).split("=");
-
-                /* Set headers */
-                switch (keyvalue[0].trim().toLowerCase(Locale.getDefault())) {
-                    case "title":
-                        document.setTitle(keyvalue[1].trim());
-                        break;
-                    case "created":
-                        document.setCreated(parseString(keyvalue[1].trim()));
-                        break;
-                    case "modified":
-                        document.setModified(parseString(keyvalue[1].trim()));
-                        break;
-                    case "noblog":
-                        document.setType(DocumentType.PAGE);
-                        break;
-                    case "category":
-                        final String[] categories = keyvalue[1].split(",");
-                        for (final String category : categories) {
-                            document.addCategory(category);
-                        }
-                        break;
-                    default:
-                        LOGGER.warning(String.format("Unknown header %s in %s", keyvalue[0],
-                                Tools.getFilenameFromPath(document.getFile())));
-                        break;
+            if (stop - start >= 2 && text[start] == ';' && text[start + 1] == ';') {
+                parseHeader(text, start + 2, stop, document);
+                slice = slice && contentStart < 0;
+            } else {
+                /* Everything that is not a header is treated as content */
+                if (contentStart < 0) {
+                    contentStart = position;
                 }
+                slice = slice && isLineSeparator(text, end, next);
+            }
+
+            position = next;
+        }
+
+        if (contentStart < 0) {
+            return length;
+        }
+
+        if (slice) {
+            /* Trim the content */
+            int start = contentStart;
+            while (start < length && text[start] <= ' ') {
+                start++;
+            }
+            int stop = length;
+            while (stop > start && text[stop - 1] <= ' ') {
+                stop--;
+            }
+            document.setContent(new String(text, start, stop - start));
+
+        } else {
+            document.setContent(assembleContent(text, contentStart, length));
+        }
+
+        return contentStart;
+    }
 
+
+    /**
+     * Calculate the length of the beginning of a text in bytes (UTF-8).
+     *
+     * @param text The text
+     * @param end The end of the beginning of the text
+     * @return The length of the beginning of the text in bytes
+     */
+    private static long getByteLength(final char[] text, final int end) {
+        long length = 0;
+        for (int i = 0; i < end; i++) {
+            final char character = text[i];
+            if (character < 0x80) {
+                length++;
+            } else if (character < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(character)) {
+                /* A surrogate pair is encoded with four bytes */
+                length += 2;
             } else {
-                /* Everything that is not a header is treated as content */
-                document.addContent(line + System.lineSeparator());
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+
+    /**
+     * Put the content of a Markdown file together line by line. Header lines are skipped, each content line is
+     * followed by the line break of the platform.
+     *
+     * @param text The text of the Markdown file
+     * @param start The start of the content
+     * @param length The length of the text
+     * @return The trimmed content
+     */
+    private static String assembleContent(final char[] text, final int start, final int length) {
+        final StringBuilder content = new StringBuilder(length - start);
+        int position = start;
+        while (position < length) {
+            final int end = getLineEnd(text, position, length);
+            final String line = new String(text, position, end - position);
+            if (!isHeader(line)) {
+                content.append(line).append(System.lineSeparator());
+            }
+            position = getNextLine(text, end, length);
+        }
+        return content.toString().trim();
+    }
+
+
+    /**
+     * Find the end of a line (the position of its line break). Line breaks are \n, \r or \r\n.
+     *
+     * @param text The text
+     * @param position The start of the line
+     * @param length The length of the text
+     * @return The end of the line
+     */
+    private static int getLineEnd(final char[] text, final int position, final int length) {
+        int end = position;
+        while (end < length && text[end] != '\n' && text[end] != '\r') {
+            end++;
+        }
+        return end;
+    }
+
+
+    /**
+     * Find the start of the next line, skipping the line break at the end of the current line.
+     *
+     * @param text The text
+     * @param end The end of the current line
+     * @param length The length of the text
+     * @return The start of the next line
+     */
+    private static int getNextLine(final char[] text, final int end, final int length) {
+        int next = end;
+        if (next < length && text[next] == '\r') {
+            next++;
+        }
+        if (next < length && text[next] == '\n') {
+            next++;
+        }
+        return next;
+    }
+
+
+    /**
+     * Check if a line break is the line break of the platform. The end of the text counts as line break as well.
+     *
+     * @param text The text
+     * @param end The start of the line break
+     * @param next The end of the line break
+     * @return true = the line break is the line break of the platform (or the end of the text), false = it is not
+     */
+    private static boolean isLineSeparator(final char[] text, final int end, final int next) {
+        if (end == next) {
+            return true;
+        }
+        if (next - end != LINE_SEPARATOR.length) {
+            return false;
+        }
+        for (int i = 0; i < LINE_SEPARATOR.length; i++) {
+            if (text[end + i] != LINE_SEPARATOR[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Check if a line of a Markdown file is a header line. Each header line starts with ;;.
+     *
+     * @param line The line to check
+     * @return true = the line is a header line, false = the line is content
+     */
+    private static boolean isHeader(final String line) {
+        return line.trim().startsWith(";;");
+    }
+
+
+    /**
+     * Parse a header of a Markdown file and set the header in a Document data object. A header consists of a key and
+     * a value, separated by =. The value ends at the end of the header or at the next =.
+     *
+     * @param text The text that contains the header
+     * @param start The start of the header (after the leading ;;)
+     * @param end The end of the header
+     * @param document The Document data object that is related to the file
+     */
+    private void parseHeader(final char[] text, final int start, final int end, final Document document) {
+        /* Split the header into key and value */
+        final int separator = indexOf(text, '=', start, end);
+        final int keyEnd = separator < 0 ? end : separator;
+        String value = "";
+        if (separator >= 0) {
+            final int valueEnd = indexOf(text, '=', separator + 1, end);
+            value = new String(text, separator + 1, (valueEnd < 0 ? end : valueEnd) - separator - 1);
+        }
+
+        /* Set headers */
+        if (isKey(text, start, keyEnd, "title")) {
+            document.setTitle(value.trim());
+        } else if (isKey(text, start, keyEnd, "created")) {
+            document.setCreated(parseString(value.trim()));
+        } else if (isKey(text, start, keyEnd, "modified")) {
+            document.setModified(parseString(value.trim()));
+        } else if (isKey(text, start, keyEnd, "noblog")) {
+            document.setType(DocumentType.PAGE);
+        } else if (isKey(text, start, keyEnd, "category")) {
+            for (final String category : value.split(",")) {
+                document.addCategory(category);
             }
+        } else {
+            LOGGER.warning(String.format("Unknown header %s in %s", new String(text, start, keyEnd - start),
+                    Tools.getFilenameFromPath(document.getFile())));
         }
     }
 
 
+    /**
+     * Find a character in a part of a text.
+     *
+     * @param text The text
+     * @param character The character to find
+     * @param start The start of the part
+     * @param end The end of the part
+     * @return The position of the character; -1 if the part does not contain the character
+     */
+    private static int indexOf(final char[] text, final char character, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (text[i] == character) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Check if a part of a text is a header key. Whitespace around the key and the case are ignored.
+     *
+     * @param text The text
+     * @param start The start of the part
+     * @param end The end of the part
+     * @param key The header key (in lower case)
+     * @return true = the part is the header key, false = the part is another header key
+     */
+    private static boolean isKey(final char[] text, final int start, final int end, final String key) {
+        int from = start;
+        while (from < end && text[from] <= ' ') {
+            from++;
+        }
+        int to = end;
+        while (to > from && text[to - 1] <= ' ') {
+            to--;
+        }
+
+        if (to - from != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.toLowerCase(text[from + i]) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
     /**
      * Converts a string into a date and time object. If the string is formatted in a wrong way the minimum date
      * is returned.
@@ -226,4 +749,227 @@ public final class Scanner extends SimpleFileVisitor<Path> {
         }
     }
 
+
+
+
+
+
+    /**
+     * A reader for the headers of a Markdown file. The bytes of the file are passed in one by one; line breaks are
+     * \n, \r or \r\n (like in BufferedReader). Only the bytes of header lines are collected and decoded, for all
+     * other lines only the start of the content and the presence of text are recorded. Whitespace is always a single
+     * byte in UTF-8, so lines can be classified without decoding them.
+     *
+     * @author Thorsten Ortlepp
+     */
+    private final class HeaderReader {
+
+        /** The Document data object that is related to the file. */
+        private final Document document;
+
+        /** The bytes of the current line after the leading ;; if the line is a header line. */
+        private final ByteArrayOutputStream header;
+
+        /** The decoder for the header lines. */
+        private final CharsetDecoder decoder;
+
+        /** The state of the current line. */
+        private LineState state;
+
+        /** The number of bytes read so far. */
+        private long position;
+
+        /** The position of the start of the current line. */
+        private long lineStart;
+
+        /** The position where the content starts; -1 if no content line was found yet. */
+        private long contentOffset;
+
+        /** Flag for the content; true = the content contains text, false = the content is empty. */
+        private boolean contentPresent;
+
+        /** Flag for line breaks; true = the previous byte was \r, so a following \n belongs to the same line break. */
+        private boolean carriageReturn;
+
+
+        /**
+         * Initialize the reader.
+         *
+         * @param document The Document data object that is related to the file
+         */
+        HeaderReader(final Document document) {
+            this.document = document;
+            this.header = new ByteArrayOutputStream();
+            this.decoder = StandardCharsets.UTF_8.newDecoder();
+            this.state = LineState.BLANK;
+            this.contentOffset = -1;
+        }
+
+
+        /**
+         * Read the next byte of the file.
+         *
+         * @param next The next byte
+         * @throws CharacterCodingException A header line is no valid UTF-8
+         */
+        void read(final byte next) throws CharacterCodingException {
+            position++;
+            if (carriageReturn) {
+                carriageReturn = false;
+                if (next == '\n') {
+                    lineStart = position;
+                    return;
+                }
+            }
+
+            if (next == '\n' || next == '\r') {
+                endLine();
+                carriageReturn = next == '\r';
+                lineStart = position;
+                return;
+            }
+
+            switch (state) {
+                case BLANK:
+                    if ((next & 0xFF) > ' ') {
+                        state = next == ';' ? LineState.SEMICOLON : LineState.CONTENT;
+                    }
+                    break;
+                case SEMICOLON:
+                    state = next == ';' ? LineState.HEADER : LineState.CONTENT;
+                    break;
+                case HEADER:
+                    header.write(next);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+
+        /**
+         * Finish reading at the end of the file. The last line is processed if it has no line break.
+         *
+         * @throws CharacterCodingException A header line is no valid UTF-8
+         */
+        void finish() throws CharacterCodingException {
+            if (position > lineStart) {
+                endLine();
+            }
+            if (contentOffset < 0) {
+                contentOffset = position;
+            }
+        }
+
+
+        /**
+         * Process the current line at its end: parse it if it is a header line, otherwise record it as content.
+         *
+         * @throws CharacterCodingException A header line is no valid UTF-8
+         */
+        private void endLine() throws CharacterCodingException {
+            if (state == LineState.HEADER) {
+                final String text = decoder.decode(ByteBuffer.wrap(header.toByteArray())).toString().trim();
+                parseHeader(text.toCharArray(), 0, text.length(), document);
+            } else {
+                if (contentOffset < 0) {
+                    contentOffset = lineStart;
+                }
+                contentPresent = contentPresent || state != LineState.BLANK;
+            }
+            state = LineState.BLANK;
+            header.reset();
+        }
+
+
+        /**
+         * Getter for the position where the content starts.
+         *
+         * @return The position where the content starts; the end of the file if there is no content
+         */
+        long getContentOffset() {
+            return contentOffset;
+        }
+
+
+        /**
+         * Getter for the flag for the content.
+         *
+         * @return true = the content contains text, false = the content is empty
+         */
+        boolean isContentPresent() {
+            return contentPresent;
+        }
+    }
+
+
+
+
+
+
+    /**
+     * The state of a line while reading the headers of a Markdown file.
+     */
+    private enum LineState {
+
+        /** Only whitespace so far. */
+        BLANK,
+
+        /** A single ; after the leading whitespace, the line may be a header line. */
+        SEMICOLON,
+
+        /** A header line: the line starts with ;; after the leading whitespace. */
+        HEADER,
+
+        /** A content line. */
+        CONTENT
+    }
+
+
+
+
+
+
+    /**
+     * A job to read a single Markdown file that was found while walking the directory tree.
+     *
+     * @author Thorsten Ortlepp
+     */
+    private final class ScanJob implements Callable<Document> {
+
+        /** The Markdown file. */
+        private final Path file;
+
+        /** The size of the file. */
+        private final long size;
+
+        /** The time of the last modification of the file. */
+        private final long lastModified;
+
+
+        /**
+         * Initialize the job.
+         *
+         * @param file The Markdown file
+         * @param size The size of the file
+         * @param lastModified The time of the last modification of the file
+         */
+        ScanJob(final Path file, final long size, final long lastModified) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+
+        /**
+         * Read the Markdown file.
+         *
+         * @return The document read from the file; null if the document is not valid
+         */
+        @Override
+        public Document call() {
+            return scanFile(file, size, lastModified);
+        }
+    }
+
 }
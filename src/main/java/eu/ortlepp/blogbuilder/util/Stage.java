@@ -0,0 +1,226 @@
+package eu.ortlepp.blogbuilder.util;
+
+import eu.ortlepp.blogbuilder.util.config.Directories;
+import eu.ortlepp.blogbuilder.util.incremental.Manifest;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Logger;
+
+/**
+ * A staging directory for building the blog. Each build creates a new generation of the blog in the directory
+ * .blogbuilder/generations and starts with hard links to all files of the published blog. When the build is
+ * finished, the generation is published by replacing the symbolic link "blog" with a link to the new generation.
+ * Renaming a symbolic link is atomic, so the published blog is always complete - even while the blog is built or if
+ * the build fails. The previous generation is kept, all older generations are removed.
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class Stage {
+
+    /** A logger to write out messages to the user. */
+    private static final Logger LOGGER = Logger.getLogger(Stage.class.getName());
+
+    /** Formatter for the names of the generations. */
+    private static final DateTimeFormatter GENERATION_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    /** The project directory. */
+    private final Path directory;
+
+    /** The published blog: a symbolic link to the current generation. */
+    private final Path blog;
+
+    /** The directory which contains all generations of the blog. */
+    private final Path generations;
+
+    /** The staging directory: the new generation of the blog. */
+    private final Path stage;
+
+    /** Flag for the staging directory; true = the staging directory was published, false = not published yet. */
+    private boolean published;
+
+
+    /**
+     * Constructor, initializes the staging directory (without creating it). The project directory is made absolute
+     * and normalized, so the generations can be compared with the target of the symbolic link "blog".
+     *
+     * @param directory The project directory
+     */
+    public Stage(final String directory) {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.blog = this.directory.resolve(Directories.BLOG.toString());
+        this.generations = this.directory.resolve(Manifest.DIRECTORY).resolve("generations");
+        this.stage = generations.resolve(LocalDateTime.now().format(GENERATION_FORMATTER));
+        this.published = false;
+    }
+
+
+    /**
+     * Create the staging directory and fill it with hard links to all files of the published blog. If hard links
+     * are not supported, the files are copied.
+     *
+     * @return The staging directory
+     */
+    public Path prepare() {
+        try {
+            Files.createDirectories(generations);
+            Files.createDirectory(stage);
+
+            if (Files.isDirectory(blog)) {
+                final Path current = blog.toRealPath();
+                Files.walkFileTree(current, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                            throws IOException {
+                        Files.createDirectories(stage.resolve(current.relativize(dir).toString()));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                            throws IOException {
+                        link(file, stage.resolve(current.relativize(file).toString()), attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+
+            LOGGER.info(String.format("Building in staging directory %s", directory.relativize(stage)));
+            return stage;
+
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Preparing the staging directory failed: %s", ex.getMessage()));
+            throw new RuntimeException(ex);
+        }
+    }
+
+
+    /**
+     * Create a hard link to a file of the published blog in the staging directory. Symbolic links are copied as
+     * symbolic links. If a hard link cannot be created, the file is copied.
+     *
+     * @param file The file of the published blog
+     * @param target The file in the staging directory
+     * @param attrs The attributes of the file
+     * @throws IOException Error while linking or copying the file
+     */
+    private void link(final Path file, final Path target, final BasicFileAttributes attrs) throws IOException {
+        if (attrs.isSymbolicLink()) {
+            Files.copy(file, target, LinkOption.NOFOLLOW_LINKS);
+            return;
+        }
+
+        try {
+            Files.createLink(target, file);
+        } catch (UnsupportedOperationException | FileSystemException ex) {
+            Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+
+    /**
+     * Publish the staging directory: the symbolic link "blog" is replaced by a link to the staging directory. If
+     * "blog" is a directory (the first staged build), it becomes the previous generation; only in this case the
+     * blog is missing for a moment. Afterwards all generations except the new and the previous one are removed.
+     */
+    public void publish() {
+        try {
+            Path previous = null;
+            if (Files.isSymbolicLink(blog)) {
+                previous = blog.resolveSibling(Files.readSymbolicLink(blog)).normalize();
+            } else if (Files.exists(blog)) {
+                previous = generations.resolve(stage.getFileName() + "-previous");
+                Files.move(blog, previous);
+            }
+
+            final Path link = Tools.getTempFile(blog);
+            Files.deleteIfExists(link);
+            Files.createSymbolicLink(link, directory.relativize(stage));
+            Tools.replaceFile(link, blog);
+            published = true;
+            LOGGER.info(String.format("Published %s", directory.relativize(stage)));
+
+            removeGenerations(previous);
+
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Publishing the staging directory failed: %s", ex.getMessage()));
+            throw new RuntimeException(ex);
+        }
+    }
+
+
+    /**
+     * Remove the staging directory if it was not published (e.g. because the build failed). The published blog is
+     * not changed.
+     */
+    public void discard() {
+        if (!published && Files.exists(stage)) {
+            try {
+                delete(stage);
+                LOGGER.info(String.format("Removed unpublished staging directory %s", directory.relativize(stage)));
+            } catch (IOException ex) {
+                LOGGER.warning(String.format("Removing %s failed: %s", stage.getFileName(), ex.getMessage()));
+            }
+        }
+    }
+
+
+    /**
+     * Remove all generations except the published one and the previous one.
+     *
+     * @param previous The previous generation; null if there is none
+     * @throws IOException Error while reading the directory of the generations
+     */
+    private void removeGenerations(final Path previous) throws IOException {
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(generations)) {
+            for (final Path dir : dirs) {
+                if (!dir.equals(stage) && !dir.equals(previous)) {
+                    try {
+                        delete(dir);
+                    } catch (IOException ex) {
+                        LOGGER.warning(String.format("Removing %s failed: %s", dir.getFileName(), ex.getMessage()));
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Delete a directory with all its files and subdirectories. Symbolic links are deleted, not followed.
+     *
+     * @param start The directory to delete
+     * @throws IOException Error while deleting a file or directory
+     */
+    private static void delete(final Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException exception)
+                    throws IOException {
+                if (exception != null) {
+                    throw exception;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
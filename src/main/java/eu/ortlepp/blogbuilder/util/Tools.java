@@ -2,9 +2,14 @@ package eu.ortlepp.blogbuilder.util;
 
 import eu.ortlepp.blogbuilder.util.config.Config;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.UnaryOperator;
 
 /**
  * An utility class with some useful (static) methods.
@@ -13,64 +18,195 @@ import java.util.regex.Pattern;
  */
 public final class Tools {
 
+    /** The algorithm used to calculate hashes of files and strings. */
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /** Hexadecimal digits, used to format hashes. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The attributes that contain links. */
+    private static final String[] LINK_ATTRIBUTES = {"href", "src", "srcset", "poster"};
+
+    /** The attribute that contains a list of links. */
+    private static final String SRCSET_ATTRIBUTE = "srcset";
+
+    /** The characters between the name and the value of an attribute. */
+    private static final String VALUE_START = "=\"";
+
+    /** Additional capacity for the prefixes when the links of a text are changed. */
+    private static final int LINK_RESERVE = 256;
+
+
+    /**
+     * Get the base URL of the blog as prefix for absolute links. The base URL always ends with a slash.
+     *
+     * @return The base URL of the blog, ending with a slash
+     */
+    public static String getAbsoluteBaseUrl() {
+        final String baseurl = Config.INSTANCE.getBaseUrl();
+        return baseurl.endsWith("/") ? baseurl : baseurl + "/";
+    }
+
+
+    /**
+     * Check if a link is absolute (starts with http / https). Absolute links are never changed.
+     *
+     * @param link The link to check
+     * @return Result of the check; true = the link is absolute, false = the link is relative
+     */
+    public static boolean isAbsoluteLink(final String link) {
+        return isAbsoluteLink(link, 0);
+    }
+
+
+    /**
+     * Check if a link in a text is absolute (starts with http / https).
+     *
+     * @param content The text that contains the link
+     * @param start The start of the link
+     * @return Result of the check; true = the link is absolute, false = the link is relative
+     */
+    private static boolean isAbsoluteLink(final String content, final int start) {
+        return content.startsWith("http:", start) || content.startsWith("https:", start);
+    }
+
+
     /**
-     * Change all non-absolute links in an HTML formatted string into relative links. All links in href and src
-     * attributes are prepended with the relative path to the base directory (e.g. ../../path/file.html).
+     * Adds a prefix to all relative links (links that do not start with http / https) in an HTML formatted string.
+     * All links in href, src, srcset and poster attributes are changed in a single pass over the content. If the
+     * content contains no links, the content itself is returned.
      *
      * @param content The (HTML) text in which the links should be changed
-     * @param relative The relative path to add to the links
+     * @param prefix The prefix to add to all relative links (e.g. ../../ or the base URL)
      * @return The content with changed links
      */
-    public static String makeLinksRelative(final String content, final String relative) {
-        String replaced = replaceLinks(content, relative, "href");
-        replaced = replaceLinks(replaced, relative, "src");
-        return replaced;
+    public static String prefixLinks(final String content, final String prefix) {
+        return mapLinks(content, link -> isAbsoluteLink(link) ? link : prefix + link);
     }
 
 
     /**
-     * Change all non-absolute links in an HTML formatted string into absolute links. All links in href and src
-     * attributes are prepended with the base URL.
+     * Changes all links in an HTML formatted string. All links in href, src, srcset and poster attributes are passed
+     * to a function in a single pass over the content and replaced by its result. If the content contains no links,
+     * the content itself is returned.
      *
      * @param content The (HTML) text in which the links should be changed
+     * @param mapper The function that changes a single link; returns the link itself to leave it unchanged
      * @return The content with changed links
      */
-    public static String makeLinksAbsolute(final String content) {
-        String baseurl = Config.INSTANCE.getBaseUrl();
-        if (!baseurl.endsWith("/")) {
-            baseurl += "/";
+    public static String mapLinks(final String content, final UnaryOperator<String> mapper) {
+        StringBuilder result = null;
+        int copied = 0;
+
+        int position = content.indexOf(VALUE_START);
+        while (position >= 0) {
+            final String attribute = getLinkAttribute(content, position);
+            final int start = position + VALUE_START.length();
+            final int end = attribute == null ? -1 : getValueEnd(content, start);
+
+            if (end < 0) {
+                position = content.indexOf(VALUE_START, position + 1);
+                continue;
+            }
+
+            if (result == null) {
+                result = new StringBuilder(content.length() + LINK_RESERVE);
+            }
+            result.append(content, copied, start);
+            if (SRCSET_ATTRIBUTE.equals(attribute)) {
+                appendSrcset(result, content, start, end, mapper);
+            } else {
+                result.append(mapper.apply(content.substring(start, end)));
+            }
+            copied = end;
+
+            position = content.indexOf(VALUE_START, end + 1);
         }
 
-        String replaced = replaceLinks(content, baseurl, "href");
-        replaced = replaceLinks(replaced, baseurl, "src");
-        return replaced;
+        if (result == null) {
+            return content;
+        }
+        result.append(content, copied, content.length());
+        return result.toString();
     }
 
 
     /**
-     * Adds a prefix to all relative links (links that do not start with  http / https).
+     * Get the name of the attribute with links whose value starts at a position.
      *
-     * @param content The (HTML) text in which the links should be changed
-     * @param prefix The prefix to add to all relative links
-     * @param attribute The attribute whose links are changed
-     * @return The content with changed links
+     * @param content The (HTML) text
+     * @param position The position of the =" between the name and the value of the attribute
+     * @return The name of the attribute; null if the attribute contains no links
      */
-    private static String replaceLinks(final String content, final String prefix, final String attribute) {
-        final Matcher matcher = Pattern.compile(attribute + "=\".*?\"").matcher(content);
-        final StringBuffer strBuffer = new StringBuffer(content.length());
+    private static String getLinkAttribute(final String content, final int position) {
+        for (final String attribute : LINK_ATTRIBUTES) {
+            if (content.startsWith(attribute, position - attribute.length())) {
+                return attribute;
+            }
+        }
+        return null;
+    }
 
-        while (matcher.find()) {
-            String found = matcher.group();
 
-            /* Change all links that do not start with http / https */
-            if (!found.startsWith(attribute + "=\"http:") && !found.startsWith(attribute + "=\"https:")) {
-                found = found.replace(attribute + "=\"", attribute + "=\"" + prefix);
-                matcher.appendReplacement(strBuffer, Matcher.quoteReplacement(found));
+    /**
+     * Find the end of an attribute value (the closing quote). The value must not span several lines.
+     *
+     * @param content The (HTML) text
+     * @param start The start of the value
+     * @return The position of the closing quote; -1 if the value is not closed in the same line
+     */
+    private static int getValueEnd(final String content, final int start) {
+        for (int i = start; i < content.length(); i++) {
+            final char character = content.charAt(i);
+            if (character == '"') {
+                return i;
+            }
+            if (character == '\n' || character == '\r' || character == '\u0085' || character == '\u2028'
+                    || character == '\u2029') {
+                return -1;
             }
         }
+        return -1;
+    }
+
 
-        matcher.appendTail(strBuffer);
-        return strBuffer.toString();
+    /**
+     * Append the links of a srcset attribute. The value of the attribute is a list of links, separated by commas;
+     * each link can be followed by a descriptor (e.g. 2x).
+     *
+     * @param result The text to append the links to
+     * @param content The (HTML) text that contains the links
+     * @param start The start of the list
+     * @param end The end of the list
+     * @param mapper The function that changes a single link
+     */
+    private static void appendSrcset(final StringBuilder result, final String content, final int start,
+            final int end, final UnaryOperator<String> mapper) {
+        int position = start;
+        while (position < end) {
+            /* Whitespace before the link */
+            int linkStart = position;
+            while (linkStart < end && Character.isWhitespace(content.charAt(linkStart))) {
+                linkStart++;
+            }
+            result.append(content, position, linkStart);
+
+            /* The link itself */
+            int linkEnd = linkStart;
+            while (linkEnd < end && !Character.isWhitespace(content.charAt(linkEnd))
+                    && content.charAt(linkEnd) != ',') {
+                linkEnd++;
+            }
+            if (linkEnd > linkStart) {
+                result.append(mapper.apply(content.substring(linkStart, linkEnd)));
+            }
+
+            /* The descriptor and the comma after the link */
+            int next = content.indexOf(',', linkEnd);
+            next = next < 0 || next >= end ? end : next + 1;
+            result.append(content, linkEnd, next);
+            position = next;
+        }
     }
 
 
@@ -86,6 +222,112 @@ public final class Tools {
     }
 
 
+    /**
+     * Get the temporary file for writing a file. The temporary file is in the same directory as the file, so it can
+     * replace the file by renaming it.
+     *
+     * @param file The file to write
+     * @return The temporary file for the file
+     */
+    public static Path getTempFile(final Path file) {
+        return file.resolveSibling("." + getFilenameFromPath(file) + ".tmp");
+    }
+
+
+    /**
+     * Replace a file with its temporary file (see getTempFile()). The temporary file is renamed, so the file is
+     * replaced at once and never seen incomplete. As the file gets a new inode, hard links to the old file (e.g. in
+     * an older generation of the blog) keep the old content.
+     *
+     * @param temp The temporary file with the new content
+     * @param file The file to replace
+     * @throws IOException Error while replacing the file
+     */
+    public static void replaceFile(final Path temp, final Path file) throws IOException {
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+    }
+
+
+    /**
+     * Write a file by writing a temporary file first and replacing the file with it (see replaceFile()).
+     *
+     * @param file The file to write
+     * @param data The content of the file
+     * @throws IOException Error while writing the file
+     */
+    public static void writeFile(final Path file, final byte[] data) throws IOException {
+        final Path temp = getTempFile(file);
+        try {
+            Files.write(temp, data);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        replaceFile(temp, file);
+    }
+
+
+    /**
+     * Calculate the hash of binary data (e.g. the content of a file). The hash is returned as hexadecimal string.
+     *
+     * @param data The data to hash
+     * @return The hash of the data as hexadecimal string
+     */
+    public static String getHash(final byte[] data) {
+        final MessageDigest digest = createDigest();
+        digest.update(data);
+        return getHash(digest);
+    }
+
+
+    /**
+     * Create a message digest to calculate a hash step by step (e.g. while a file is read).
+     *
+     * @return The message digest
+     */
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            /* Every Java platform has to support SHA-256, this error should never happen */
+            throw new AssertionError(ex);
+        }
+    }
+
+
+    /**
+     * Get the hash calculated by a message digest. The hash is returned as hexadecimal string.
+     *
+     * @param digest The message digest
+     * @return The hash as hexadecimal string
+     */
+    public static String getHash(final MessageDigest digest) {
+        final byte[] hash = digest.digest();
+        final char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+
+    /**
+     * Calculate the hash of a string. The string is encoded in UTF-8 before hashing.
+     *
+     * @param data The string to hash
+     * @return The hash of the string as hexadecimal string
+     */
+    public static String getHash(final String data) {
+        return getHash(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+
     /**
      * Private constructor for tool class - should never be called.
      */
@@ -2,77 +2,224 @@ package eu.ortlepp.blogbuilder.util;
 
 import eu.ortlepp.blogbuilder.model.Category;
 import eu.ortlepp.blogbuilder.model.Document;
-import eu.ortlepp.blogbuilder.model.EmbeddedDocument;
 import eu.ortlepp.blogbuilder.model.TemplateFile;
 import eu.ortlepp.blogbuilder.model.TemplateKey;
 import eu.ortlepp.blogbuilder.model.freemarker.DocumentWrapper;
+import eu.ortlepp.blogbuilder.model.freemarker.TrackingConfiguration;
 import eu.ortlepp.blogbuilder.util.config.Config;
+import eu.ortlepp.blogbuilder.util.incremental.Manifest;
+import freemarker.cache.StrongCacheStorage;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 /**
- * A writer for HTML files. Writes the processed Markdown files to HTML files.
+ * A writer for HTML files. Writes the processed Markdown files to HTML files. The HTML files can be written by a
+ * pipeline: a pool of threads renders the HTML files and a single thread writes them to disk. Each HTML file is
+ * rendered with its own data model, so the output is the same as with a single thread.
  *
  * @author Thorsten Ortlepp
  */
-public final class Writer {
+public final class Writer implements AutoCloseable {
 
     /** A logger to write out messages to the user. */
     private static final Logger LOGGER = Logger.getLogger(Writer.class.getName());
 
+    /** The file extension of FreeMarker templates. */
+    private static final String TEMPLATE_EXTENSION = ".ftl";
+
+    /** The maximum number of rendered HTML files per thread that wait to be written to disk. */
+    private static final int QUEUE_SIZE = 4;
+
+    /** The interval (in milliseconds) to check if the write stage is still running while it is shut down. */
+    private static final long CLOSE_POLL_INTERVAL = 100;
+
+    /** Marks the end of the rendered HTML files in the queue. */
+    private static final RenderedFile END = new RenderedFile(null, null, null, null, null);
+
     /** The target directory (where the HTML files are created). */
     private final Path target;
 
-    /** The configuration of the FreeMarker template engine. */
-    private final Configuration fmConfig;
+    /** The configuration of the FreeMarker template engine; it records which templates each template includes. */
+    private final TrackingConfiguration fmConfig;
+
+    /** The wrapper for documents in templates; creates the adapters for blog posts embedded in a page. */
+    private final DocumentWrapper wrapper;
+
+    /** The main templates, loaded and parsed once before any HTML file is written. */
+    private final Map<TemplateFile, Template> templates;
 
     /** Static data / information from the configuration file. */
     private final Map<String, String> blogInfo;
 
+    /** The build manifest; HTML files that are up to date are not written again. */
+    private final Manifest manifest;
+
+    /** The helper for writing the files of the built blog. */
+    private final OutputFiles outputFiles;
+
+    /** The map of the fingerprinted resource files; the links to them are changed in all HTML files. */
+    private final AssetMap assets;
+
+    /** The fingerprint of the map of the fingerprinted resource files; an input of all HTML files. */
+    private final String assetsFingerprint;
+
+    /** A counter for all HTML files that were skipped because they are up to date. */
+    private int skipped;
+
+    /** The index and category pages of the blog with the last modification of the newest blog post they contain. */
+    private final Map<String, LocalDateTime> specialPages;
+
+    /** The templates that are unchanged since the previous build (including the templates they include). */
+    private final Set<TemplateFile> unchangedTemplates;
+
+    /** The thread pool to render the HTML files; null if only one thread is used. */
+    private final ExecutorService executor;
+
+    /** The rendered HTML files that wait to be written to disk; null if only one thread is used. */
+    private final BlockingQueue<RenderedFile> queue;
+
+    /** The thread that writes the rendered HTML files to disk; null if only one thread is used. */
+    private final Thread writeStage;
+
 
     /**
-     * Constructor, initializes the FreeMarker template engine and loads the static data.
+     * Constructor, initializes the FreeMarker template engine, loads all templates and loads the static data.
      *
      * @param target The target directory (where the HTML files are created)
      * @param templates The directory which contains the templates
+     * @param manifest The build manifest
+     * @param outputFiles The helper for writing the files of the built blog
+     * @param threads The number of threads to write the HTML files
+     * @param assets The map of the fingerprinted resource files
      */
-    public Writer(final Path target, final Path templates) {
+    public Writer(final Path target, final Path templates, final Manifest manifest, final OutputFiles outputFiles,
+            final int threads, final AssetMap assets) {
         this.target = target;
+        this.manifest = manifest;
+        this.outputFiles = outputFiles;
+        this.assets = assets;
+        this.assetsFingerprint = assets.getFingerprint();
+        this.skipped = 0;
+        this.specialPages = new LinkedHashMap<String, LocalDateTime>();
 
         /* Initialize FreeMarker */
-        fmConfig = new Configuration(Configuration.VERSION_2_3_25);
+        fmConfig = new TrackingConfiguration(Configuration.VERSION_2_3_25);
+        wrapper = new DocumentWrapper(fmConfig.getIncompatibleImprovements());
         try {
             fmConfig.setDirectoryForTemplateLoading(templates.toFile());
             fmConfig.setDefaultEncoding("UTF-8");
             fmConfig.setLocale(Config.INSTANCE.getLocale());
-            fmConfig.setObjectWrapper(new DocumentWrapper(fmConfig.getIncompatibleImprovements()));
+            fmConfig.setObjectWrapper(wrapper);
+            fmConfig.setCacheStorage(new StrongCacheStorage());
+            fmConfig.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
         } catch (IOException ex) {
             LOGGER.severe("Initializing FreeMarker failed!");
             throw new RuntimeException(ex);
         }
+        this.templates = loadTemplates(templates);
 
         /* Load static data from configuration */
         blogInfo = new HashMap<String, String>();
         blogInfo.put(TemplateKey.Config.TITLE.toString(), Config.INSTANCE.getTitle());
         blogInfo.put(TemplateKey.Config.AUTHOR.toString(), Config.INSTANCE.getAuthor());
         blogInfo.put(TemplateKey.Config.LANGUAGE.toString(), Config.INSTANCE.getLocale().getLanguage());
+
+        /* Check the templates, based on the dependencies recorded in the previous build */
+        unchangedTemplates = EnumSet.noneOf(TemplateFile.class);
+        for (final TemplateFile template : TemplateFile.values()) {
+            if (manifest.isTemplateUnchanged(template.toString())) {
+                unchangedTemplates.add(template);
+            }
+        }
+
+        /* Start the pipeline: a pool of threads renders, a single thread writes to disk */
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads);
+            queue = new ArrayBlockingQueue<RenderedFile>(threads * QUEUE_SIZE);
+            writeStage = new Thread(this::writeQueuedFiles, "blogbuilder-writer");
+            writeStage.setDaemon(true);
+            writeStage.start();
+        } else {
+            executor = null;
+            queue = null;
+            writeStage = null;
+        }
+    }
+
+
+    /**
+     * Load and parse all templates before any HTML file is written. The main templates are kept for the whole build,
+     * all other templates in the template directory (the templates included by the main templates) are parsed to
+     * check them and are kept in the cache of FreeMarker. Templates are never checked for changes during the build,
+     * so writing an HTML file does not access the template files at all.
+     *
+     * @param directory The directory which contains the templates
+     * @return The loaded main templates
+     */
+    private Map<TemplateFile, Template> loadTemplates(final Path directory) {
+        final Map<TemplateFile, Template> loaded = new EnumMap<TemplateFile, Template>(TemplateFile.class);
+        for (final TemplateFile template : TemplateFile.values()) {
+            loaded.put(template, loadTemplate(template.toString()));
+        }
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(TEMPLATE_EXTENSION))
+                .map(file -> directory.relativize(file).toString().replace(File.separatorChar, '/'))
+                .forEach(this::loadTemplate);
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Reading the templates failed: %s", ex.getMessage()));
+            throw new RuntimeException(ex);
+        }
+
+        return loaded;
+    }
+
+
+    /**
+     * Load and parse a single template. A template that is missing or broken stops the build.
+     *
+     * @param name The name of the template
+     * @return The loaded template
+     */
+    private Template loadTemplate(final String name) {
+        try {
+            return fmConfig.getTemplate(name);
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Template %s is invalid: %s", name, ex.getMessage()));
+            throw new RuntimeException(ex);
+        }
     }
 
 
@@ -108,45 +255,26 @@ public final class Writer {
      */
     public int writeDocuments(final List<Document> documents,
             final TemplateKey.Prefix key, final TemplateFile template) {
-        int counter = 0;
         final String keyStr = key.toString();
-        final Map<String, Object> content = new HashMap<String, Object>();
-        content.put(TemplateKey.Prefix.BLOG.toString(), blogInfo);
+        final List<RenderJob> jobs = new ArrayList<RenderJob>();
 
         for (final Document document : documents) {
-            /* Set the document */
-            if (content.containsKey(keyStr)) {
-                content.replace(keyStr, document);
-                content.replace(TemplateKey.BASEDIR.toString(), document.getToBaseDir());
-            } else {
-                content.put(keyStr, document);
-                content.put(TemplateKey.BASEDIR.toString(), document.getToBaseDir());
+            /* Skip the file if it is up to date */
+            final String fingerprint = createFingerprint(keyStr, document.getPath(), document.getHash(),
+                    document.getPrevious(), document.getNext());
+            if (isUpToDate(document.getPath(), fingerprint, template)) {
+                continue;
             }
 
-            /* The absolute path of the file */
-            final Path file = Paths.get(target.toString(), document.getPath());
-
-            try {
-                /* Get the parent directory (will be null if file has no parent directory) */
-                final Path parent = file.getParent();
-
-                if (parent != null) {
-                    /* Create directories */
-                    Files.createDirectories(parent);
-
-                    /* Write file to disk using the FreeMarker template */
-                    if (writeFile(content, file.toFile(), template)) {
-                        counter++;
-                        LOGGER.info(String.format("Wrote %s", document.getPath()));
-                    }
-                }
+            /* Set the document */
+            final Map<String, Object> content = createModel(document.getToBaseDir());
+            content.put(keyStr, document);
 
-            } catch (IOException ex) {
-                LOGGER.severe(String.format("Creating directories failed: %s", ex.getMessage()));
-            }
+            jobs.add(new RenderJob(content, document.getPath(), template, fingerprint,
+                    String.format("Wrote %s", document.getPath())));
         }
 
-        return counter;
+        return execute(jobs);
     }
 
 
@@ -156,11 +284,6 @@ public final class Writer {
      * @param blogposts The list of blog posts
      */
     public void writeIndex(final List<Document> blogposts) {
-        final Map<String, Object> content = new HashMap<String, Object>();
-        content.put(TemplateKey.Prefix.BLOG.toString(), blogInfo);
-        content.put(TemplateKey.BASEDIR.toString(), "");
-        int counter = 0;
-
         final int postsPerPage = Config.INSTANCE.getIndexPosts();
 
         /* Calculate the number of index pages */
@@ -181,42 +304,41 @@ public final class Writer {
         /* Counter for the number of blog posts that were already added to an index page */
         int added = 0;
 
-        /* A list for all blog posts of an index page */
-        final List<EmbeddedDocument> posts = new ArrayList<EmbeddedDocument>();
-
         /* Create all index pages */
+        final List<RenderJob> jobs = new ArrayList<RenderJob>();
         for (int i = 0; i < pages; i++) {
-            posts.clear();
+            /* A list for all blog posts of an index page */
+            final List<Document> posts = new ArrayList<Document>();
 
             /* Get blog posts for the page */
             for (int j = added; j < (i + 1) * postsPerPage; j++) {
                 if (added < blogposts.size()) {
-                    posts.add(new EmbeddedDocument(blogposts.get(added)));
+                    posts.add(blogposts.get(added));
                     added++;
                 } else {
                     break;
                 }
             }
 
-            /* Set the document */
-            final String postsKey = TemplateKey.Prefix.POSTS.toString();
-            if (content.containsKey(postsKey)) {
-                content.replace(postsKey, posts);
-                content.replace(TemplateKey.INDEX_NEWER.toString(), filenames[i]);
-                content.replace(TemplateKey.INDEX_OLDER.toString(), filenames[i + 2]);
-            } else {
-                content.put(postsKey, posts);
-                content.put(TemplateKey.INDEX_NEWER.toString(), filenames[i]);
-                content.put(TemplateKey.INDEX_OLDER.toString(), filenames[i + 2]);
-            }
+            specialPages.put(filenames[i + 1], getLastModified(posts));
 
-            /* Write file to disk using the FreeMarker template */
-            if (writeFile(content, new File(target.toFile(), filenames[i + 1]), TemplateFile.INDEX)) {
-                counter++;
-                LOGGER.info(String.format("Wrote index page %s", filenames[i + 1]));
+            /* Skip the file if it is up to date */
+            final String fingerprint = createFingerprint(getFingerprintInputs(posts, filenames[i], filenames[i + 2]));
+            if (isUpToDate(filenames[i + 1], fingerprint, TemplateFile.INDEX)) {
+                continue;
             }
+
+            /* Set the document */
+            final Map<String, Object> content = createModel("");
+            content.put(TemplateKey.Prefix.POSTS.toString(), wrapper.wrapEmbedded(posts));
+            content.put(TemplateKey.INDEX_NEWER.toString(), filenames[i]);
+            content.put(TemplateKey.INDEX_OLDER.toString(), filenames[i + 2]);
+
+            jobs.add(new RenderJob(content, filenames[i + 1], TemplateFile.INDEX, fingerprint,
+                    String.format("Wrote index page %s", filenames[i + 1])));
         }
 
+        final int counter = execute(jobs);
         LOGGER.info(String.format("%d index pages written", counter));
     }
 
@@ -227,64 +349,496 @@ public final class Writer {
      * @param blogposts The list of blog posts
      */
     public void writeCategoryPages(final List<Document> blogposts) {
-        final Map<String, List<EmbeddedDocument>> categories = new HashMap<String, List<EmbeddedDocument>>();
+        final Map<String, List<Document>> categories = new TreeMap<String, List<Document>>();
 
         /* Build category index */
         for (final Document blogpost : blogposts) {
             for (final Category category : blogpost.getCategories()) {
-                categories.putIfAbsent(category.getNameFormatted(), new ArrayList<EmbeddedDocument>());
-                categories.get(category.getNameFormatted()).add(new EmbeddedDocument(blogpost));
+                categories.putIfAbsent(category.getNameFormatted(), new ArrayList<Document>());
+                categories.get(category.getNameFormatted()).add(blogpost);
             }
         }
 
         /* Write category pages */
-        final Map<String, Object> content = new HashMap<String, Object>();
-        content.put(TemplateKey.Prefix.BLOG.toString(), blogInfo);
-        content.put(TemplateKey.BASEDIR.toString(), "");
-        int counter = 0;
-
-        for (final Entry<String, List<EmbeddedDocument>> entry : categories.entrySet()) {
+        final List<RenderJob> jobs = new ArrayList<RenderJob>();
+        for (final Entry<String, List<Document>> entry : categories.entrySet()) {
             final String filename = String.format("%s%s.html", Config.INSTANCE.getCategoryFile(),
                     entry.getKey().toLowerCase(Config.INSTANCE.getLocale()));
+            specialPages.put(filename, getLastModified(entry.getValue()));
+
+            /* Skip the file if it is up to date */
+            final String fingerprint = createFingerprint(getFingerprintInputs(entry.getValue(), entry.getKey()));
+            if (isUpToDate(filename, fingerprint, TemplateFile.CATEGORY)) {
+                continue;
+            }
 
             /* Set the document */
-            if (content.containsKey(TemplateKey.Prefix.POSTS.toString())) {
-                content.replace(TemplateKey.Prefix.POSTS.toString(), entry.getValue());
-                content.replace(TemplateKey.CATEGORY.toString(), entry.getKey());
+            final Map<String, Object> content = createModel("");
+            content.put(TemplateKey.Prefix.POSTS.toString(), wrapper.wrapEmbedded(entry.getValue()));
+            content.put(TemplateKey.CATEGORY.toString(), entry.getKey());
+
+            jobs.add(new RenderJob(content, filename, TemplateFile.CATEGORY, fingerprint,
+                    String.format("Wrote category page %s for category %s", filename, entry.getKey())));
+        }
+
+        final int counter = execute(jobs);
+        LOGGER.info(String.format("%d category pages written", counter));
+    }
+
+
+    /**
+     * Create the data model for a single HTML file. The data model contains the static data and the path to the base
+     * directory. Each HTML file gets its own data model, so HTML files can be written concurrently.
+     *
+     * @param toBaseDir The relative path from the HTML file to the base directory
+     * @return The created data model
+     */
+    private Map<String, Object> createModel(final String toBaseDir) {
+        final Map<String, Object> content = new HashMap<String, Object>();
+        content.put(TemplateKey.Prefix.BLOG.toString(), blogInfo);
+        content.put(TemplateKey.BASEDIR.toString(), toBaseDir);
+        return content;
+    }
+
+
+    /**
+     * Execute render jobs. If only one thread is used, the jobs are executed one by one; otherwise the jobs are
+     * rendered concurrently by the thread pool and written to disk by the write stage. The rendered HTML files are
+     * handed over to the write stage by a bounded queue, so the renderers wait if writing falls behind.
+     *
+     * @param jobs The render jobs to execute
+     * @return The number of HTML files that were written successfully
+     */
+    private int execute(final List<RenderJob> jobs) {
+        final Batch batch = new Batch(jobs.size());
+
+        for (final RenderJob job : jobs) {
+            if (executor == null) {
+                job.render(batch);
             } else {
-                content.put(TemplateKey.Prefix.POSTS.toString(), entry.getValue());
-                content.put(TemplateKey.CATEGORY.toString(), entry.getKey());
+                executor.execute(() -> {
+                    try {
+                        job.render(batch);
+                    } catch (RuntimeException ex) {
+                        LOGGER.severe(String.format("Error while writing %s: %s", job.output, ex.getMessage()));
+                        fail(job.output, batch);
+                    }
+                });
             }
+        }
+
+        try {
+            return batch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Writing HTML files was interrupted", ex);
+        }
+    }
 
-            /* Write file to disk using the FreeMarker template */
-            if (writeFile(content, new File(target.toFile(), filename), TemplateFile.CATEGORY)) {
-                counter++;
-                LOGGER.info(String.format("Wrote category page %s for category %s", filename, entry.getKey()));
+
+    /**
+     * The write stage: write the rendered HTML files from the queue to disk until the end of the queue is reached. An
+     * error while writing a single HTML file does not stop the write stage, otherwise the renderers would wait
+     * forever for free space in the queue.
+     */
+    private void writeQueuedFiles() {
+        try {
+            RenderedFile file = queue.take();
+            while (file != END) {
+                try {
+                    writeRenderedFile(file);
+                } catch (RuntimeException ex) {
+                    LOGGER.severe(String.format("Error while writing %s: %s", file.output, ex.getMessage()));
+                }
+                file = queue.take();
             }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        LOGGER.info(String.format("%d category pages written", counter));
+
+    /**
+     * Shut down the thread pool and the write stage (if there are any). Has to be called after all HTML files are
+     * written. If the write stage has stopped unexpectedly, the end of the queue is not waited for.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                while (!queue.offer(END, CLOSE_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    if (!writeStage.isAlive()) {
+                        LOGGER.severe("Writing HTML files stopped unexpectedly");
+                        return;
+                    }
+                }
+                writeStage.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * Getter for the number of HTML files that were skipped because they are up to date.
+     *
+     * @return The number of skipped HTML files
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+
+    /**
+     * Getter for the index and category pages of the blog, including the pages that were skipped because they are up
+     * to date. Each page is mapped to its last modification: the last modification of the newest blog post it
+     * contains.
+     *
+     * @return The filenames of the index and category pages and their last modification
+     */
+    public Map<String, LocalDateTime> getSpecialPages() {
+        return specialPages;
+    }
+
+
+    /**
+     * Get the last modification of a list of blog posts, i.e. the last modification of the newest blog post.
+     *
+     * @param posts The list of blog posts
+     * @return The last modification of the newest blog post
+     */
+    private LocalDateTime getLastModified(final List<Document> posts) {
+        LocalDateTime modified = LocalDateTime.MIN;
+        for (final Document post : posts) {
+            if (post.getModified().isAfter(modified)) {
+                modified = post.getModified();
+            }
+        }
+        return modified;
+    }
+
+
+    /**
+     * Add the dependencies of all templates (the templates they include) that were recorded while writing the HTML
+     * files to the build manifest. Has to be called after all HTML files are written.
+     */
+    public void recordTemplateDependencies() {
+        for (final TemplateFile template : TemplateFile.values()) {
+            manifest.addTemplateDependencies(template.toString(), fmConfig.getDependencies(template.toString()));
+        }
+    }
+
+
+    /**
+     * Check if an HTML file is up to date (according to the build manifest). An HTML file is up to date if its
+     * template is unchanged and its fingerprint is unchanged. An HTML file that is up to date is counted and kept for
+     * the current build, so its compressed copy is written if it is missing.
+     *
+     * @param output The path of the HTML file (relative to the target directory)
+     * @param fingerprint The fingerprint of the HTML file in the current build
+     * @param template The template that is used for the HTML file
+     * @return true = the HTML file is up to date, false = the HTML file has to be written
+     */
+    private boolean isUpToDate(final String output, final String fingerprint, final TemplateFile template) {
+        if (unchangedTemplates.contains(template) && manifest.isUpToDate(output, fingerprint)) {
+            try {
+                outputFiles.keep(Paths.get(target.toString(), output));
+            } catch (IOException ex) {
+                LOGGER.severe(String.format("Error while keeping %s: %s", output, ex.getMessage()));
+            }
+            manifest.addOutput(output, fingerprint);
+            skipped++;
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Create the fingerprint of an HTML file for the build manifest. If resource files are fingerprinted, the
+     * fingerprint of the asset map is an input of all HTML files, as they may contain links to fingerprinted files.
+     *
+     * @param inputs All values that are inputs of the HTML file
+     * @return The fingerprint of the HTML file
+     */
+    private String createFingerprint(final String... inputs) {
+        if (assetsFingerprint.isEmpty()) {
+            return manifest.createFingerprint(inputs);
+        }
+
+        final String[] all = Arrays.copyOf(inputs, inputs.length + 1);
+        all[inputs.length] = assetsFingerprint;
+        return manifest.createFingerprint(all);
     }
 
 
     /**
-     * Writer that writes out the content of a single document to an HTML file. A template is used to write the file.
+     * Collect the inputs for the fingerprint of an HTML file that contains a list of blog posts. The inputs are the
+     * given values followed by the path and the hash of each blog post.
+     *
+     * @param posts The blog posts in the HTML file
+     * @param values Additional values that are inputs of the HTML file
+     * @return All inputs of the HTML file
+     */
+    private String[] getFingerprintInputs(final List<Document> posts, final String... values) {
+        final List<String> inputs = new ArrayList<String>(Arrays.asList(values));
+        for (final Document post : posts) {
+            inputs.add(post.getPath());
+            inputs.add(post.getHash());
+        }
+        return inputs.toArray(new String[inputs.size()]);
+    }
+
+
+    /**
+     * Render the content of a single document with a template. Afterwards, the links to fingerprinted resource files
+     * are changed.
      *
      * @param content The content of the document
-     * @param file The name of the HTML file
+     * @param output The path of the HTML file (relative to the target directory)
      * @param template The template to use for the HTML file
-     * @return Success flag: true = file written successfully, false = error while writing the file
+     * @return The rendered HTML file; null if an error occurred while rendering
      */
-    private boolean writeFile(final Map<String, Object> content, final File file, final TemplateFile template) {
-        try (java.io.Writer out =
-                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
-            final Template fmTemplate = fmConfig.getTemplate(template.toString());
-            fmTemplate.process(content, out);
+    private byte[] renderFile(final Map<String, Object> content, final String output, final TemplateFile template) {
+        final ByteArrayOutputStream html = new ByteArrayOutputStream();
+        try (java.io.Writer out = new BufferedWriter(new OutputStreamWriter(html, StandardCharsets.UTF_8))) {
+            templates.get(template).process(content, out);
         } catch (IOException | TemplateException ex) {
-            LOGGER.severe(String.format("Error while writing %s: %s", file.getName(), ex.getMessage()));
-            return false;
+            LOGGER.severe(String.format("Error while writing %s: %s", output, ex.getMessage()));
+            return null;
+        }
+
+        if (assets.isEmpty()) {
+            return html.toByteArray();
+        }
+        return assets.rewriteLinks(new String(html.toByteArray(), StandardCharsets.UTF_8), output)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Write a rendered HTML file to disk. Missing parent directories are created.
+     *
+     * @param file The rendered HTML file
+     */
+    private void writeRenderedFile(final RenderedFile file) {
+        boolean success = false;
+        final Path path = Paths.get(target.toString(), file.output);
+
+        try {
+            /* Get the parent directory (will be null if file has no parent directory) */
+            final Path parent = path.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+                if (outputFiles.write(path, file.html)) {
+                    LOGGER.info(file.message);
+                } else {
+                    LOGGER.info(String.format("%s is unchanged", file.output));
+                }
+                manifest.addOutput(file.output, file.fingerprint);
+                success = true;
+            }
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Error while writing %s: %s", file.output, ex.getMessage()));
+        } finally {
+            if (success) {
+                file.batch.finish(true);
+            } else {
+                fail(file.output, file.batch);
+            }
+        }
+    }
+
+
+    /**
+     * Mark an HTML file as failed. The HTML file of the previous build is kept, so a failed HTML file never removes
+     * a published one.
+     *
+     * @param output The path of the HTML file (relative to the target directory)
+     * @param batch The batch the HTML file belongs to
+     */
+    private void fail(final String output, final Batch batch) {
+        manifest.keepOutput(output);
+        batch.finish(false);
+    }
+
+
+
+
+
+
+    /**
+     * A job to render a single HTML file. The job is executed by the thread pool (or directly if only one thread is
+     * used).
+     *
+     * @author Thorsten Ortlepp
+     */
+    private final class RenderJob {
+
+        /** The data model of the HTML file. */
+        private final Map<String, Object> content;
+
+        /** The path of the HTML file (relative to the target directory). */
+        private final String output;
+
+        /** The template to use for the HTML file. */
+        private final TemplateFile template;
+
+        /** The fingerprint of the HTML file for the build manifest. */
+        private final String fingerprint;
+
+        /** The message to log after the HTML file was written. */
+        private final String message;
+
+
+        /**
+         * Initialize the job.
+         *
+         * @param content The data model of the HTML file
+         * @param output The path of the HTML file (relative to the target directory)
+         * @param template The template to use for the HTML file
+         * @param fingerprint The fingerprint of the HTML file for the build manifest
+         * @param message The message to log after the HTML file was written
+         */
+        RenderJob(final Map<String, Object> content, final String output, final TemplateFile template,
+                final String fingerprint, final String message) {
+            this.content = content;
+            this.output = output;
+            this.template = template;
+            this.fingerprint = fingerprint;
+            this.message = message;
+        }
+
+
+        /**
+         * Render the HTML file and hand it over to the write stage (or write it directly if only one thread is used).
+         *
+         * @param batch The batch the job belongs to
+         */
+        void render(final Batch batch) {
+            final byte[] html = renderFile(content, output, template);
+            if (html == null) {
+                fail(output, batch);
+                return;
+            }
+
+            final RenderedFile file = new RenderedFile(output, html, fingerprint, message, batch);
+            if (queue == null) {
+                writeRenderedFile(file);
+                return;
+            }
+
+            try {
+                queue.put(file);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                fail(output, batch);
+            }
+        }
+    }
+
+
+
+
+
+
+    /**
+     * A rendered HTML file that waits to be written to disk.
+     *
+     * @author Thorsten Ortlepp
+     */
+    private static final class RenderedFile {
+
+        /** The path of the HTML file (relative to the target directory). */
+        private final String output;
+
+        /** The content of the HTML file. */
+        private final byte[] html;
+
+        /** The fingerprint of the HTML file for the build manifest. */
+        private final String fingerprint;
+
+        /** The message to log after the HTML file was written. */
+        private final String message;
+
+        /** The batch the HTML file belongs to. */
+        private final Batch batch;
+
+
+        /**
+         * Initialize the rendered HTML file.
+         *
+         * @param output The path of the HTML file (relative to the target directory)
+         * @param html The content of the HTML file
+         * @param fingerprint The fingerprint of the HTML file for the build manifest
+         * @param message The message to log after the HTML file was written
+         * @param batch The batch the HTML file belongs to
+         */
+        RenderedFile(final String output, final byte[] html, final String fingerprint, final String message,
+                final Batch batch) {
+            this.output = output;
+            this.html = html;
+            this.fingerprint = fingerprint;
+            this.message = message;
+            this.batch = batch;
+        }
+    }
+
+
+
+
+
+
+    /**
+     * A batch of render jobs. Counts the finished jobs and the HTML files that were written successfully.
+     *
+     * @author Thorsten Ortlepp
+     */
+    private static final class Batch {
+
+        /** The number of jobs that are not finished yet. */
+        private final CountDownLatch pending;
+
+        /** The number of HTML files that were written successfully. */
+        private final AtomicInteger written;
+
+
+        /**
+         * Initialize the batch.
+         *
+         * @param size The number of jobs in the batch
+         */
+        Batch(final int size) {
+            pending = new CountDownLatch(size);
+            written = new AtomicInteger();
+        }
+
+
+        /**
+         * Mark a job of the batch as finished.
+         *
+         * @param success Success flag: true = file written successfully, false = error while writing the file
+         */
+        void finish(final boolean success) {
+            if (success) {
+                written.incrementAndGet();
+            }
+            pending.countDown();
+        }
+
+
+        /**
+         * Wait until all jobs of the batch are finished.
+         *
+         * @return The number of HTML files that were written successfully
+         * @throws InterruptedException Waiting was interrupted
+         */
+        int await() throws InterruptedException {
+            pending.await();
+            return written.get();
         }
-        return true;
     }
 
 }
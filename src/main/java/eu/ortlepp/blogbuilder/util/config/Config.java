@@ -50,9 +50,45 @@ public enum Config {
     /** The filename of the sitemap. */
     private String sitemapFile;
 
+    /** The maximum number of URLs in a sitemap; 0 = no limit. */
+    private int sitemapUrls;
+
+    /** Flag for compressing the parts of a split sitemap; true = compress with gzip, false = do not compress. */
+    private boolean sitemapGzip;
+
     /** Files in the "Blog" folder that are ignored while cleaning. */
     private String[] cleanIgnore;
 
+    /** Flag for hard linking the resource files; true = create hard links, false = copy the files. */
+    private boolean resourcesLink;
+
+    /** Extensions of the resource files that get a content hash in their names; empty = no content hashes. */
+    private String[] resourcesFingerprint;
+
+    /** Flag for incremental builds; true = rebuild only changed files, false = rebuild the whole blog. */
+    private boolean incremental;
+
+    /** Flag for staged builds; true = build in a staging directory and publish it at once, false = build in place. */
+    private boolean staged;
+
+    /** Flag for comparing files; true = write only files whose content changed, false = write all files. */
+    private boolean compare;
+
+    /** Flag for compressed copies; true = write a compressed copy of each text file, false = no compressed copies. */
+    private boolean gzip;
+
+    /** The number of threads to build the blog; 0 = one thread per processor. */
+    private int threads;
+
+    /** Flag for lazy content; true = load the content of documents when needed, false = keep it in memory. */
+    private boolean lazy;
+
+    /** The size (in megabytes) above which content files are memory-mapped; 0 = never. */
+    private int mapThreshold;
+
+    /** The maximum size of the HTML cache in megabytes; 0 = no cache. */
+    private int cacheSize;
+
 
     /**
      * Constructor, initialize all configuration values with their defaults.
@@ -68,7 +104,19 @@ public enum Config {
         baseurl = ConfigItems.BASEURL.getDefaultValue();
         locale = Locale.forLanguageTag(ConfigItems.LOCALE.getDefaultValue());
         sitemapFile = ConfigItems.SITEMAP_FILE.getDefaultValue();
+        sitemapUrls = Integer.parseInt(ConfigItems.SITEMAP_URLS.getDefaultValue());
+        sitemapGzip = Boolean.parseBoolean(ConfigItems.SITEMAP_GZIP.getDefaultValue());
         cleanIgnore = ConfigItems.CLEAN_IGONRE.getDefaultValue().split(";");
+        resourcesLink = Boolean.parseBoolean(ConfigItems.RESOURCES_LINK.getDefaultValue());
+        resourcesFingerprint = ConfigItems.RESOURCES_FINGERPRINT.getDefaultValue().split(";");
+        incremental = Boolean.parseBoolean(ConfigItems.BUILD_INCREMENTAL.getDefaultValue());
+        staged = Boolean.parseBoolean(ConfigItems.BUILD_STAGED.getDefaultValue());
+        compare = Boolean.parseBoolean(ConfigItems.BUILD_COMPARE.getDefaultValue());
+        gzip = Boolean.parseBoolean(ConfigItems.BUILD_GZIP.getDefaultValue());
+        threads = Integer.parseInt(ConfigItems.BUILD_THREADS.getDefaultValue());
+        lazy = Boolean.parseBoolean(ConfigItems.BUILD_LAZY.getDefaultValue());
+        mapThreshold = Integer.parseInt(ConfigItems.BUILD_MMAP.getDefaultValue());
+        cacheSize = Integer.parseInt(ConfigItems.CACHE_SIZE.getDefaultValue());
     }
 
 
@@ -95,6 +143,18 @@ public enum Config {
             cleanIgnore = getPropertyValue(properties, ConfigItems.CLEAN_IGONRE).split(";");
             indexPosts = getPropertyIntValue(properties, ConfigItems.INDEX_POSTS);
             feedPosts = getPropertyIntValue(properties, ConfigItems.FEED_POSTS);
+            sitemapUrls = getPropertyIntValue(properties, ConfigItems.SITEMAP_URLS);
+            sitemapGzip = getPropertyBooleanValue(properties, ConfigItems.SITEMAP_GZIP);
+            resourcesLink = getPropertyBooleanValue(properties, ConfigItems.RESOURCES_LINK);
+            resourcesFingerprint = getPropertyValue(properties, ConfigItems.RESOURCES_FINGERPRINT).split(";");
+            incremental = getPropertyBooleanValue(properties, ConfigItems.BUILD_INCREMENTAL);
+            staged = getPropertyBooleanValue(properties, ConfigItems.BUILD_STAGED);
+            compare = getPropertyBooleanValue(properties, ConfigItems.BUILD_COMPARE);
+            gzip = getPropertyBooleanValue(properties, ConfigItems.BUILD_GZIP);
+            threads = getPropertyIntValue(properties, ConfigItems.BUILD_THREADS);
+            lazy = getPropertyBooleanValue(properties, ConfigItems.BUILD_LAZY);
+            mapThreshold = getPropertyIntValue(properties, ConfigItems.BUILD_MMAP);
+            cacheSize = getPropertyIntValue(properties, ConfigItems.CACHE_SIZE);
 
             Locale localeTemp = Locale.forLanguageTag(getPropertyValue(properties, ConfigItems.LOCALE));
             if (localeTemp.getLanguage().isEmpty() || localeTemp.getCountry().isEmpty()) {
@@ -146,6 +206,20 @@ public enum Config {
     }
 
 
+    /**
+     * Get a boolean value from the properties object. If the value/item is not present,
+     * the default value is returned instead. Only "true" (ignoring case) is read as true,
+     * all other values are read as false.
+     *
+     * @param properties The properties read from file
+     * @param configItem The property item whose value is requested
+     * @return The boolean value for the item; the default value if the item is not present
+     */
+    private boolean getPropertyBooleanValue(final Properties properties, final ConfigItems configItem) {
+        return Boolean.parseBoolean(getPropertyValue(properties, configItem).trim());
+    }
+
+
     /**
      * Getter for the title of the blog.
      *
@@ -246,6 +320,26 @@ public enum Config {
     }
 
 
+    /**
+     * Getter for the maximum number of URLs in a sitemap. A larger sitemap is split into several sitemaps.
+     *
+     * @return The maximum number of URLs in a sitemap; 0 = no limit
+     */
+    public int getSitemapUrls() {
+        return sitemapUrls;
+    }
+
+
+    /**
+     * Getter for the flag for compressing the parts of a split sitemap.
+     *
+     * @return Flag for compressing; true = compress the parts with gzip, false = do not compress
+     */
+    public boolean isSitemapGzip() {
+        return sitemapGzip;
+    }
+
+
     /**
      * Getter for the Files in the "Blog" folder that are ignored while cleaning.
      *
@@ -255,4 +349,105 @@ public enum Config {
         return cleanIgnore.clone();
     }
 
+
+    /**
+     * Getter for the flag for hard linking the resource files.
+     *
+     * @return true = create hard links to the resource files, false = copy the resource files
+     */
+    public boolean isResourcesLink() {
+        return resourcesLink;
+    }
+
+
+    /**
+     * Getter for the extensions of the resource files that get a content hash in their names.
+     *
+     * @return Extensions of the resource files that get a content hash in their names (e.g. css, js or png)
+     */
+    public String[] getResourcesFingerprint() {
+        return resourcesFingerprint.clone();
+    }
+
+
+    /**
+     * Getter for the flag for incremental builds.
+     *
+     * @return true = rebuild only changed files, false = rebuild the whole blog
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+
+    /**
+     * Getter for the flag for staged builds.
+     *
+     * @return true = build in a staging directory and publish it at once, false = build in place
+     */
+    public boolean isStaged() {
+        return staged;
+    }
+
+
+    /**
+     * Getter for the flag for comparing files.
+     *
+     * @return true = write only files whose content changed, false = write all files
+     */
+    public boolean isCompare() {
+        return compare;
+    }
+
+
+    /**
+     * Getter for the flag for compressed copies of the text files.
+     *
+     * @return true = write a compressed copy of each text file, false = no compressed copies
+     */
+    public boolean isGzip() {
+        return gzip;
+    }
+
+
+    /**
+     * Getter for the number of threads to build the blog. If the configured number is not positive, one thread per
+     * available processor is used.
+     *
+     * @return The number of threads to build the blog
+     */
+    public int getThreads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+
+    /**
+     * Getter for the flag for lazy content.
+     *
+     * @return true = load the content of documents when needed, false = keep the content in memory
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+
+    /**
+     * Getter for the size above which content files are memory-mapped.
+     *
+     * @return The size in megabytes; 0 = no content file is memory-mapped
+     */
+    public int getMapThreshold() {
+        return mapThreshold;
+    }
+
+
+    /**
+     * Getter for the maximum size of the HTML cache.
+     *
+     * @return The maximum size of the HTML cache in megabytes; 0 = no cache
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
 }
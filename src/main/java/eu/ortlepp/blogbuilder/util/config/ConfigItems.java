@@ -39,8 +39,44 @@ public enum ConfigItems {
     /** The configuration item for the filename of the sitemap. */
     SITEMAP_FILE("sitemap.filename", "sitemap.xml", "The filename of the sitemap"),
 
+    /** The configuration item for the maximum number of URLs in the sitemap. */
+    SITEMAP_URLS("sitemap.urls", "50000", "The maximum number of URLs per sitemap file (0 = no limit)"),
+
+    /** The configuration item for compressing the parts of a split sitemap. */
+    SITEMAP_GZIP("sitemap.gzip", "false", "Compress the parts of a split sitemap with gzip (true) or not (false)"),
+
     /** The configuration item for the files to ignore while cleaning the blog directory. */
-    CLEAN_IGONRE("clean.ignore", ".gitkeep", "Files in the \"blog\" folder that are ignored while cleaning");
+    CLEAN_IGONRE("clean.ignore", ".gitkeep", "Files in the \"blog\" folder that are ignored while cleaning"),
+
+    /** The configuration item for hard linking the resource files. */
+    RESOURCES_LINK("resources.link", "false", "Hard link resource files into the blog (true) or copy them (false)"),
+
+    /** The configuration item for the resource files with a content hash in their names. */
+    RESOURCES_FINGERPRINT("resources.fingerprint", "", "Extensions of resource files with a hash in their name"),
+
+    /** The configuration item for incremental builds. */
+    BUILD_INCREMENTAL("build.incremental", "false", "Rebuild only changed files (true) or the whole blog (false)"),
+
+    /** The configuration item for building the blog in a staging directory. */
+    BUILD_STAGED("build.staged", "false", "Build in a staging directory (true) or directly in the blog folder (false)"),
+
+    /** The configuration item for writing only changed files. */
+    BUILD_COMPARE("build.compare", "false", "Write only files whose content changed (true) or all files (false)"),
+
+    /** The configuration item for writing compressed copies of the text files. */
+    BUILD_GZIP("build.gzip", "false", "Write a compressed copy (.gz) of each text file (true) or not (false)"),
+
+    /** The configuration item for the number of threads to build the blog. */
+    BUILD_THREADS("build.threads", "1", "The number of threads to build the blog (0 = one per processor)"),
+
+    /** The configuration item for loading the content of documents on demand. */
+    BUILD_LAZY("build.lazy", "false", "Load the content of documents when needed (true) or keep it in memory (false)"),
+
+    /** The configuration item for the size above which content files are memory-mapped. */
+    BUILD_MMAP("build.mmap", "16", "Content files of this size (in megabytes) or larger are memory-mapped (0 = never)"),
+
+    /** The configuration item for the size of the HTML cache. */
+    CACHE_SIZE("cache.size", "0", "The maximum size of the HTML cache in megabytes (0 = no cache)");
 
 
     /** The key (in the properties file) of a configuration item. */
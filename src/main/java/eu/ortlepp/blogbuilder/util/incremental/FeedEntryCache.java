@@ -0,0 +1,173 @@
+package eu.ortlepp.blogbuilder.util.incremental;
+
+import eu.ortlepp.blogbuilder.util.Tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A persistent cache for the entries of the feed, used for incremental builds. Each entry is a file whose name is the
+ * hash of everything the entry depends on (the blog post, the configuration and the Markdown converter), so an entry
+ * of an unchanged blog post is written to the feed again exactly as it was created before. Only the entries used by
+ * the current build are kept.
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class FeedEntryCache {
+
+    /** A logger to write out messages to the user. */
+    private static final Logger LOGGER = Logger.getLogger(FeedEntryCache.class.getName());
+
+    /** The directory of the cache. */
+    private final Path cache;
+
+    /** Flag for the cache; true = the cache is used, false = the cache is disabled. */
+    private final boolean enabled;
+
+    /** The names of the entries used by the current build. */
+    private final Set<String> used;
+
+    /** The number of entries that were found in the cache. */
+    private final AtomicInteger hits;
+
+    /** The number of entries that were created and added to the cache. */
+    private final AtomicInteger misses;
+
+
+    /**
+     * Constructor, initializes the cache.
+     *
+     * @param directory The project directory
+     * @param enabled Flag for the cache; true = the cache is used, false = the cache is disabled
+     */
+    public FeedEntryCache(final String directory, final boolean enabled) {
+        this.cache = Paths.get(directory, Manifest.DIRECTORY, "cache", "feed");
+        this.enabled = enabled;
+        this.used = ConcurrentHashMap.newKeySet();
+        this.hits = new AtomicInteger();
+        this.misses = new AtomicInteger();
+    }
+
+
+    /**
+     * Getter for the flag of the cache.
+     *
+     * @return Flag for the cache; true = the cache is used, false = the cache is disabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Create the key of an entry from everything the entry depends on.
+     *
+     * @param inputs All values the entry depends on
+     * @return The key of the entry
+     */
+    public String createKey(final String... inputs) {
+        return Tools.getHash(String.join("\n", inputs));
+    }
+
+
+    /**
+     * Get an entry from the cache.
+     *
+     * @param key The key of the entry
+     * @return The cached entry; null if the entry is not in the cache or the cache is disabled
+     */
+    public String getEntry(final String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        try {
+            final String entry = new String(Files.readAllBytes(cache.resolve(key)), StandardCharsets.UTF_8);
+            used.add(key);
+            hits.incrementAndGet();
+            return entry;
+        } catch (NoSuchFileException ex) {
+            /* Not in the cache yet */
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Reading %s from the feed cache failed: %s", key, ex.getMessage()));
+        }
+        return null;
+    }
+
+
+    /**
+     * Add an entry to the cache. The entry is written to a temporary file first, so other builds never read an
+     * incomplete entry.
+     *
+     * @param key The key of the entry
+     * @param entry The entry to store
+     */
+    public void addEntry(final String key, final String entry) {
+        if (!enabled) {
+            return;
+        }
+
+        used.add(key);
+        misses.incrementAndGet();
+        Path temp = null;
+        try {
+            Files.createDirectories(cache);
+            temp = Files.createTempFile(cache, key, ".tmp");
+            Files.write(temp, entry.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, cache.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Writing %s to the feed cache failed: %s", key, ex.getMessage()));
+            deleteQuietly(temp);
+        }
+    }
+
+
+    /**
+     * Remove all entries that were not used by the current build. If the cache is disabled, all entries are removed.
+     * Has to be called after the feed is written.
+     */
+    public void cleanUp() {
+        if (!Files.isDirectory(cache)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.list(cache)) {
+            files.filter(file -> !used.contains(file.getFileName().toString())).forEach(this::deleteQuietly);
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Reading the feed cache failed: %s", ex.getMessage()));
+        }
+
+        if (enabled) {
+            LOGGER.info(String.format("Feed cache: %d entries reused, %d entries created", hits.get(), misses.get()));
+        }
+    }
+
+
+    /**
+     * Delete a file, errors are ignored.
+     *
+     * @param file The file to delete; may be null
+     */
+    private void deleteQuietly(final Path file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Removing %s failed: %s", file.getFileName(), ex.getMessage()));
+        }
+    }
+
+}
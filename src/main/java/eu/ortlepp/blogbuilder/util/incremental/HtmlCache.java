@@ -0,0 +1,198 @@
+package eu.ortlepp.blogbuilder.util.incremental;
+
+import eu.ortlepp.blogbuilder.util.Tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A persistent cache for Markdown content converted to HTML. Each entry is a file whose name is the hash of the
+ * Markdown content, the link prefix used for the conversion and a fingerprint of the Markdown converter (its options
+ * and extensions), so a changed converter never returns outdated HTML. The cache is limited in size: after a build, the
+ * least recently used entries are removed until the cache fits into its limit.
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class HtmlCache {
+
+    /** A logger to write out messages to the user. */
+    private static final Logger LOGGER = Logger.getLogger(HtmlCache.class.getName());
+
+    /** The number of bytes per megabyte. */
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    /** The directory of the cache. */
+    private final Path cache;
+
+    /** The maximum size of the cache in bytes; 0 = the cache is disabled. */
+    private final long maxSize;
+
+    /** The fingerprint of the Markdown converter. */
+    private final String fingerprint;
+
+    /** The number of Markdown contents that were found in the cache. */
+    private final AtomicInteger hits;
+
+    /** The number of Markdown contents that were converted and added to the cache. */
+    private final AtomicInteger misses;
+
+
+    /**
+     * Constructor, initializes the cache.
+     *
+     * @param directory The project directory
+     * @param maxSize The maximum size of the cache in megabytes; 0 = the cache is disabled
+     * @param fingerprint The fingerprint of the Markdown converter
+     */
+    public HtmlCache(final String directory, final int maxSize, final String fingerprint) {
+        this.cache = Paths.get(directory, Manifest.DIRECTORY, "cache", "html");
+        this.maxSize = Math.max(maxSize, 0) * MEGABYTE;
+        this.fingerprint = fingerprint;
+        this.hits = new AtomicInteger();
+        this.misses = new AtomicInteger();
+    }
+
+
+    /**
+     * Get the HTML for Markdown content. If the content is in the cache, the cached HTML is returned; otherwise the
+     * content is converted and the HTML is added to the cache. The same content is cached separately for each link
+     * prefix.
+     *
+     * @param markdown The Markdown content
+     * @param prefix The prefix that is added to all relative links while the content is converted
+     * @param converter The converter to use if the content is not in the cache
+     * @return The HTML for the Markdown content
+     */
+    public String getHtml(final String markdown, final String prefix, final UnaryOperator<String> converter) {
+        if (maxSize == 0) {
+            return converter.apply(markdown);
+        }
+
+        final Path entry = cache.resolve(Tools.getHash(fingerprint + prefix + '\n' + markdown));
+        try {
+            final String html = new String(Files.readAllBytes(entry), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return html;
+        } catch (NoSuchFileException ex) {
+            /* Not in the cache yet */
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Reading %s from the HTML cache failed: %s", entry.getFileName(),
+                    ex.getMessage()));
+        }
+
+        final String html = converter.apply(markdown);
+        misses.incrementAndGet();
+        store(entry, html);
+        return html;
+    }
+
+
+    /**
+     * Store HTML in the cache. The HTML is written to a temporary file first, so other threads and builds never read
+     * an incomplete entry.
+     *
+     * @param entry The file of the cache entry
+     * @param html The HTML to store
+     */
+    private void store(final Path entry, final String html) {
+        Path temp = null;
+        try {
+            Files.createDirectories(cache);
+            temp = Files.createTempFile(cache, entry.getFileName().toString(), ".tmp");
+            Files.write(temp, html.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Writing %s to the HTML cache failed: %s", entry.getFileName(),
+                    ex.getMessage()));
+            deleteQuietly(temp);
+        }
+    }
+
+
+    /**
+     * Remove the least recently used entries until the cache fits into its limit. If the cache is disabled, all
+     * entries are removed. Has to be called after all HTML files are written.
+     */
+    public void cleanUp() {
+        if (!Files.isDirectory(cache)) {
+            return;
+        }
+
+        final List<Path> entries = new ArrayList<Path>();
+        try (Stream<Path> files = Files.list(cache)) {
+            files.forEach(entries::add);
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Reading the HTML cache failed: %s", ex.getMessage()));
+            return;
+        }
+
+        /* Collect the sizes and the last usage, the least recently used entries first */
+        final Map<Path, BasicFileAttributes> attributes = new HashMap<Path, BasicFileAttributes>();
+        long size = 0;
+        for (final Path entry : entries) {
+            try {
+                final BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                attributes.put(entry, attrs);
+                size += attrs.size();
+            } catch (IOException ex) {
+                LOGGER.warning(String.format("Reading %s failed: %s", entry.getFileName(), ex.getMessage()));
+            }
+        }
+        entries.retainAll(attributes.keySet());
+        entries.sort(Comparator.comparing(entry -> attributes.get(entry).lastModifiedTime()));
+
+        int evicted = 0;
+        for (final Path entry : entries) {
+            if (size <= maxSize) {
+                break;
+            }
+            if (deleteQuietly(entry)) {
+                size -= attributes.get(entry).size();
+                evicted++;
+            }
+        }
+
+        if (maxSize > 0) {
+            LOGGER.info(String.format("HTML cache: %d hits, %d conversions, %d entries removed",
+                    hits.get(), misses.get(), evicted));
+        }
+    }
+
+
+    /**
+     * Delete a file, errors are ignored.
+     *
+     * @param file The file to delete; may be null
+     * @return Success flag: true = file deleted, false = file not deleted
+     */
+    private boolean deleteQuietly(final Path file) {
+        if (file == null) {
+            return false;
+        }
+
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Removing %s failed: %s", file.getFileName(), ex.getMessage()));
+            return false;
+        }
+    }
+
+}
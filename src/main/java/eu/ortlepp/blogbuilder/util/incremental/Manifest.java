@@ -0,0 +1,510 @@
+package eu.ortlepp.blogbuilder.util.incremental;
+
+import eu.ortlepp.blogbuilder.BlogBuilder;
+import eu.ortlepp.blogbuilder.model.DocumentType;
+import eu.ortlepp.blogbuilder.util.Compressor;
+import eu.ortlepp.blogbuilder.util.Tools;
+import eu.ortlepp.blogbuilder.util.config.Config;
+import eu.ortlepp.blogbuilder.util.config.Directories;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * The build manifest for incremental builds. The manifest remembers the content files (with their hashes and header
+ * values) and the written output files (with a fingerprint of all their inputs) of a build. It is stored in the
+ * project directory and read again by the next build, which then rebuilds only the outputs whose inputs changed and
+ * removes outputs that are no longer produced. For each main template the manifest also remembers all templates it
+ * includes (and a fingerprint of them), so a changed template affects only the outputs that depend on it.
+ *
+ * <p>If incremental builds are disabled, the manifest is neither read nor written and all outputs are regarded as
+ * outdated.</p>
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class Manifest {
+
+    /** A logger to write out messages to the user. */
+    private static final Logger LOGGER = Logger.getLogger(Manifest.class.getName());
+
+    /** The directory (in the project directory) where BlogBuilder stores its internal files. */
+    public static final String DIRECTORY = ".blogbuilder";
+
+    /** The name of the manifest file. */
+    private static final String FILE = "manifest.properties";
+
+    /** Prefix for the keys of content files in the manifest file. */
+    private static final String PREFIX_SOURCE = "source.";
+
+    /** Prefix for the keys of output files in the manifest file. */
+    private static final String PREFIX_OUTPUT = "output.";
+
+    /** Prefix for the keys of template dependencies in the manifest file. */
+    private static final String PREFIX_TEMPLATE = "template.";
+
+    /** Prefix for the keys of template fingerprints in the manifest file. */
+    private static final String PREFIX_TEMPLATE_HASH = "templatehash.";
+
+    /** The key of the environment fingerprint in the manifest file. */
+    private static final String KEY_ENVIRONMENT = "environment";
+
+    /** Flag for incremental builds; if false the manifest is disabled. */
+    private final boolean enabled;
+
+    /** The manifest file. */
+    private final Path file;
+
+    /** The directory with the built blog. */
+    private final Path blog;
+
+    /** The directory with the templates. */
+    private final Path templates;
+
+    /** The fingerprint of the environment (version and configuration) of the current build. */
+    private final String environment;
+
+    /** The content files of the previous build. */
+    private final Map<String, SourceEntry> previousSources;
+
+    /** The output files (and their fingerprints) of the previous build. */
+    private final Map<String, String> previousOutputs;
+
+    /** The content files of the current build. */
+    private final Map<String, SourceEntry> currentSources;
+
+    /** The output files (and their fingerprints) of the current build. */
+    private final Map<String, String> currentOutputs;
+
+    /** The main templates and the templates they depend on, of the previous build. */
+    private final Map<String, Set<String>> previousTemplates;
+
+    /** The main templates and the templates they depend on, of the current build. */
+    private final Map<String, Set<String>> currentTemplates;
+
+    /** The main templates and the fingerprints of the templates they depend on, of the previous build. */
+    private final Map<String, String> previousTemplateFingerprints;
+
+    /** The hashes of all templates that were already read in the current build. */
+    private final Map<String, String> templateHashes;
+
+
+    /**
+     * Constructor, initializes the manifest. If incremental builds are enabled, the manifest of the previous build
+     * is read (if it exists).
+     *
+     * @param directory The project directory
+     * @param enabled Flag for incremental builds; true = the manifest is used, false = the manifest is disabled
+     */
+    public Manifest(final String directory, final boolean enabled) {
+        this(directory, Paths.get(directory, Directories.BLOG.toString()), enabled);
+    }
+
+
+    /**
+     * Constructor, initializes the manifest. If incremental builds are enabled, the manifest of the previous build
+     * is read (if it exists).
+     *
+     * @param directory The project directory
+     * @param blog The directory where the blog is built (e.g. a staging directory)
+     * @param enabled Flag for incremental builds; true = the manifest is used, false = the manifest is disabled
+     */
+    public Manifest(final String directory, final Path blog, final boolean enabled) {
+        this.enabled = enabled;
+        this.file = Paths.get(directory, DIRECTORY, FILE);
+        this.blog = blog;
+        this.templates = Paths.get(directory, Directories.TEMPLATES.toString());
+        this.previousSources = new HashMap<String, SourceEntry>();
+        this.previousOutputs = new HashMap<String, String>();
+        this.currentSources = new ConcurrentHashMap<String, SourceEntry>();
+        this.currentOutputs = new ConcurrentHashMap<String, String>();
+        this.previousTemplates = new HashMap<String, Set<String>>();
+        this.currentTemplates = new HashMap<String, Set<String>>();
+        this.previousTemplateFingerprints = new HashMap<String, String>();
+        this.templateHashes = new HashMap<String, String>();
+
+        if (enabled) {
+            this.environment = createEnvironmentFingerprint(Paths.get(directory));
+            load();
+        } else {
+            this.environment = "";
+        }
+    }
+
+
+    /**
+     * Check if the manifest is enabled (= incremental builds are enabled).
+     *
+     * @return true = the manifest is enabled, false = the manifest is disabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Check if a previous build is known. If no previous build is known, the state of the directory with the built
+     * blog is unknown as well.
+     *
+     * @return true = a previous build is known, false = no previous build is known (or the manifest is disabled)
+     */
+    public boolean hasPreviousBuild() {
+        return !previousOutputs.isEmpty();
+    }
+
+
+    /**
+     * Get the entry of a content file from the previous build. The entry is only returned if the file has not changed
+     * since the previous build.
+     *
+     * @param key The key of the content file
+     * @param size The current size of the file in bytes
+     * @param lastModified The current last modification time of the file in milliseconds
+     * @return The entry of the previous build; null if there is no entry or the file has changed
+     */
+    public SourceEntry getUnchangedSource(final String key, final long size, final long lastModified) {
+        final SourceEntry entry = previousSources.get(key);
+        if (entry != null && entry.matches(size, lastModified)) {
+            return entry;
+        }
+        return null;
+    }
+
+
+    /**
+     * Add the entry of a content file to the current build.
+     *
+     * @param key The key of the content file
+     * @param entry The entry of the content file
+     */
+    public void addSource(final String key, final SourceEntry entry) {
+        if (enabled) {
+            currentSources.put(key, entry);
+        }
+    }
+
+
+    /**
+     * Create the fingerprint of an output file. The fingerprint is a hash over the environment of the build and all
+     * given inputs of the output file.
+     *
+     * @param inputs All inputs of the output file
+     * @return The fingerprint of the output file
+     */
+    public String createFingerprint(final String... inputs) {
+        if (!enabled) {
+            return "";
+        }
+
+        final StringBuilder builder = new StringBuilder(environment);
+        for (final String input : inputs) {
+            builder.append('\n').append(input);
+        }
+        return Tools.getHash(builder.toString());
+    }
+
+
+    /**
+     * Check if a main template is unchanged since the previous build. A main template is unchanged if neither the
+     * main template itself nor one of the templates it included in the previous build has changed.
+     *
+     * @param main The name of the main template
+     * @return true = the main template is unchanged, false = the main template changed or is unknown
+     */
+    public boolean isTemplateUnchanged(final String main) {
+        final String previous = previousTemplateFingerprints.get(main);
+        return enabled && previous != null
+            && previous.equals(createTemplateFingerprint(previousTemplates.getOrDefault(main, new TreeSet<>())));
+    }
+
+
+    /**
+     * Create the fingerprint of a set of templates. The fingerprint is a hash over the names and contents of all
+     * templates.
+     *
+     * @param names The names of the templates
+     * @return The fingerprint of the templates
+     */
+    private String createTemplateFingerprint(final Set<String> names) {
+        final StringBuilder builder = new StringBuilder();
+        for (final String template : new TreeSet<String>(names)) {
+            final String hash = templateHashes.computeIfAbsent(template, key -> getFileHash(templates.resolve(key)));
+            builder.append(template).append('=').append(hash).append('\n');
+        }
+        return Tools.getHash(builder.toString());
+    }
+
+
+    /**
+     * Add the dependencies of a main template to the current build. The dependencies of the previous build are kept
+     * as well because templates that were included only by outputs that were not written in the current build
+     * would be missing otherwise.
+     *
+     * @param main The name of the main template
+     * @param dependencies The names of all templates the main template depends on
+     */
+    public void addTemplateDependencies(final String main, final Set<String> dependencies) {
+        if (enabled) {
+            final Set<String> merged = new TreeSet<String>(dependencies);
+            merged.addAll(previousTemplates.getOrDefault(main, new TreeSet<>()));
+            currentTemplates.put(main, merged);
+        }
+    }
+
+
+    /**
+     * Check if an output file from the previous build is still up to date. This is the case if its fingerprint is
+     * unchanged and the file still exists.
+     *
+     * @param output The path of the output file (relative to the directory with the built blog)
+     * @param fingerprint The fingerprint of the output file in the current build
+     * @return true = the output file is up to date, false = the output file has to be written
+     */
+    public boolean isUpToDate(final String output, final String fingerprint) {
+        return enabled && fingerprint.equals(previousOutputs.get(output)) && Files.exists(blog.resolve(output));
+    }
+
+
+    /**
+     * Check if an output file was produced by the previous build. Such a file may be overwritten by the current
+     * build.
+     *
+     * @param output The path of the output file (relative to the directory with the built blog)
+     * @return true = the output file was produced by the previous build, false = the file is unknown
+     */
+    public boolean hasOutput(final String output) {
+        return previousOutputs.containsKey(output);
+    }
+
+
+    /**
+     * Add an output file to the current build.
+     *
+     * @param output The path of the output file (relative to the directory with the built blog)
+     * @param fingerprint The fingerprint of the output file
+     */
+    public void addOutput(final String output, final String fingerprint) {
+        if (enabled) {
+            currentOutputs.put(output, fingerprint);
+        }
+    }
+
+
+    /**
+     * Keep an output file of the previous build in the current build because writing it failed. The file is not
+     * removed as orphan and it gets an empty fingerprint, so the next build writes it again.
+     *
+     * @param output The path of the output file (relative to the directory with the built blog)
+     */
+    public void keepOutput(final String output) {
+        if (enabled && previousOutputs.containsKey(output)) {
+            currentOutputs.put(output, "");
+        }
+    }
+
+
+    /**
+     * Delete all output files of the previous build that were not produced by the current build (e.g. because their
+     * content file was deleted), together with their compressed copies. Directories that are empty afterwards are
+     * deleted as well.
+     */
+    public void removeOrphans() {
+        if (!enabled) {
+            return;
+        }
+
+        int counter = 0;
+        for (final String output : previousOutputs.keySet()) {
+            if (!currentOutputs.containsKey(output)) {
+                final Path orphan = blog.resolve(output);
+                try {
+                    if (Files.deleteIfExists(orphan)) {
+                        counter++;
+                        LOGGER.info(String.format("Removed %s", output));
+                    }
+                    Files.deleteIfExists(Compressor.getCompressedFile(orphan));
+                    removeEmptyDirectories(orphan.getParent());
+                } catch (IOException ex) {
+                    LOGGER.warning(String.format("Removing %s failed: %s", output, ex.getMessage()));
+                }
+            }
+        }
+
+        LOGGER.info(String.format("%d orphaned files removed", counter));
+    }
+
+
+    /**
+     * Delete a directory and its parent directories as long as they are empty. The directory with the built blog
+     * itself is never deleted.
+     *
+     * @param directory The directory to start with
+     * @throws IOException Error while deleting a directory
+     */
+    private void removeEmptyDirectories(final Path directory) throws IOException {
+        Path current = directory;
+        while (current != null && current.startsWith(blog) && !current.equals(blog)) {
+            final String[] files = current.toFile().list();
+            if (files == null || files.length > 0) {
+                break;
+            }
+            Files.deleteIfExists(current);
+            current = current.getParent();
+        }
+    }
+
+
+    /**
+     * Read the manifest of the previous build from the manifest file. If the file does not exist, no previous build
+     * is known. If the file cannot be read, it is ignored and the whole blog is rebuilt.
+     */
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Reading %s failed, rebuilding everything: %s", FILE, ex.getMessage()));
+            return;
+        }
+
+        for (final String name : properties.stringPropertyNames()) {
+            if (name.startsWith(PREFIX_OUTPUT)) {
+                previousOutputs.put(name.substring(PREFIX_OUTPUT.length()), properties.getProperty(name));
+            } else if (name.startsWith(PREFIX_TEMPLATE_HASH)) {
+                previousTemplateFingerprints.put(name.substring(PREFIX_TEMPLATE_HASH.length()),
+                        properties.getProperty(name));
+            } else if (name.startsWith(PREFIX_TEMPLATE)) {
+                previousTemplates.put(name.substring(PREFIX_TEMPLATE.length()),
+                        new TreeSet<String>(Arrays.asList(properties.getProperty(name).split(","))));
+            } else if (name.startsWith(PREFIX_SOURCE) && name.endsWith(".hash")) {
+                final String key = name.substring(PREFIX_SOURCE.length(), name.length() - ".hash".length());
+                try {
+                    previousSources.put(key, readSource(properties, PREFIX_SOURCE + key + "."));
+                } catch (RuntimeException ex) {
+                    LOGGER.warning(String.format("Invalid entry for %s in %s ignored", key, FILE));
+                }
+            }
+        }
+
+        LOGGER.info(String.format("Read %s of the previous build", FILE));
+    }
+
+
+    /**
+     * Read the entry of a content file from the properties of the manifest file.
+     *
+     * @param properties The properties of the manifest file
+     * @param prefix The prefix of all properties of the content file
+     * @return The entry of the content file
+     */
+    private SourceEntry readSource(final Properties properties, final String prefix) {
+        return new SourceEntry(Long.parseLong(properties.getProperty(prefix + "size")),
+                Long.parseLong(properties.getProperty(prefix + "mtime")),
+                properties.getProperty(prefix + "hash"),
+                Long.parseLong(properties.getProperty(prefix + "offset")),
+                properties.getProperty(prefix + "title"),
+                LocalDateTime.parse(properties.getProperty(prefix + "created")),
+                LocalDateTime.parse(properties.getProperty(prefix + "modified")),
+                DocumentType.valueOf(properties.getProperty(prefix + "type")),
+                SourceEntry.parseCategories(properties.getProperty(prefix + "category")));
+    }
+
+
+    /**
+     * Write the manifest of the current build to the manifest file. The entries are sorted to keep the file stable.
+     */
+    public void save() {
+        if (!enabled) {
+            return;
+        }
+
+        final Map<String, String> values = new TreeMap<String, String>();
+        values.put(KEY_ENVIRONMENT, environment);
+
+        for (final Entry<String, SourceEntry> source : currentSources.entrySet()) {
+            final String prefix = PREFIX_SOURCE + source.getKey() + ".";
+            final SourceEntry entry = source.getValue();
+            values.put(prefix + "size", Long.toString(entry.getSize()));
+            values.put(prefix + "mtime", Long.toString(entry.getLastModified()));
+            values.put(prefix + "hash", entry.getHash());
+            values.put(prefix + "offset", Long.toString(entry.getContentOffset()));
+            values.put(prefix + "title", entry.getTitle());
+            values.put(prefix + "created", entry.getCreated().toString());
+            values.put(prefix + "modified", entry.getModified().toString());
+            values.put(prefix + "type", entry.getType().name());
+            values.put(prefix + "category", String.join(",", entry.getCategories()));
+        }
+
+        for (final Entry<String, String> output : currentOutputs.entrySet()) {
+            values.put(PREFIX_OUTPUT + output.getKey(), output.getValue());
+        }
+
+        for (final Entry<String, Set<String>> template : currentTemplates.entrySet()) {
+            values.put(PREFIX_TEMPLATE + template.getKey(), String.join(",", template.getValue()));
+            values.put(PREFIX_TEMPLATE_HASH + template.getKey(), createTemplateFingerprint(template.getValue()));
+        }
+
+        final Properties properties = new Properties();
+        properties.putAll(values);
+
+        try {
+            Files.createDirectories(file.getParent());
+            try (OutputStream output = Files.newOutputStream(file)) {
+                properties.store(output, "BlogBuilder build manifest - do not edit");
+            }
+            LOGGER.info(String.format("Wrote %s", FILE));
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Writing %s failed: %s", FILE, ex.getMessage()));
+        }
+    }
+
+
+    /**
+     * Create the fingerprint of the build environment. The environment consists of the version of BlogBuilder and the
+     * configuration file. If one of them changes, all output files have to be rebuilt.
+     *
+     * @param directory The project directory
+     * @return The fingerprint of the environment
+     */
+    private static String createEnvironmentFingerprint(final Path directory) {
+        final StringBuilder builder = new StringBuilder(BlogBuilder.VERSION);
+        builder.append('\n').append(getFileHash(directory.resolve(Config.CONFIG_FILE)));
+        return Tools.getHash(builder.toString());
+    }
+
+
+    /**
+     * Calculate the hash of a file. If the file cannot be read, a random value is returned to make sure that the hash
+     * never matches the hash of a previous build.
+     *
+     * @param file The file to hash
+     * @return The hash of the file
+     */
+    private static String getFileHash(final Path file) {
+        try {
+            return Tools.getHash(Files.readAllBytes(file));
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Reading %s failed: %s", Tools.getFilenameFromPath(file), ex.getMessage()));
+            return "unreadable-" + System.nanoTime();
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package eu.ortlepp.blogbuilder.util.incremental;
+
+import eu.ortlepp.blogbuilder.util.Tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A persistent cache for the content hashes of resource files, used for fingerprinted resource files. The hash of a
+ * resource file is only calculated again if its size or last modification time changed, so large resource files
+ * (e.g. images) are not read in every build. Only the hashes of the resource files of the current build are kept.
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class ResourceHashes {
+
+    /** A logger to write out messages to the user. */
+    private static final Logger LOGGER = Logger.getLogger(ResourceHashes.class.getName());
+
+    /** The size of the buffer for reading resource files. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The file of the cache. */
+    private final Path file;
+
+    /** The hashes of the previous build; the path of the resource file and its size, modification time and hash. */
+    private final Properties previous;
+
+    /** The hashes of the current build; the path of the resource file and its size, modification time and hash. */
+    private final Map<String, String> current;
+
+    /** The number of hashes that were found in the cache. */
+    private final AtomicInteger hits;
+
+    /** The number of hashes that were calculated. */
+    private final AtomicInteger misses;
+
+
+    /**
+     * Constructor, initializes the cache and reads the hashes of the previous build.
+     *
+     * @param directory The project directory
+     */
+    public ResourceHashes(final String directory) {
+        this.file = Paths.get(directory, Manifest.DIRECTORY, "cache", "resources.properties");
+        this.previous = new Properties();
+        this.current = new ConcurrentHashMap<String, String>();
+        this.hits = new AtomicInteger();
+        this.misses = new AtomicInteger();
+
+        try (InputStream input = Files.newInputStream(file)) {
+            previous.load(input);
+        } catch (NoSuchFileException ex) {
+            /* No hashes from a previous build */
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Reading the resource hashes failed: %s", ex.getMessage()));
+        }
+    }
+
+
+    /**
+     * Get the hash of the content of a resource file. The hash is taken from the cache if the size and the last
+     * modification time of the file are unchanged; otherwise the hash is calculated.
+     *
+     * @param resource The resource file
+     * @param path The path of the resource file, relative to the resources directory
+     * @param attrs The attributes of the resource file
+     * @return The hash of the content of the resource file
+     * @throws IOException Error while reading the resource file
+     */
+    public String getHash(final Path resource, final String path, final BasicFileAttributes attrs)
+            throws IOException {
+        final String state = attrs.size() + " " + attrs.lastModifiedTime().toMillis() + " ";
+        final String entry = previous.getProperty(path);
+
+        final String hash;
+        if (entry != null && entry.startsWith(state)) {
+            hash = entry.substring(state.length());
+            hits.incrementAndGet();
+        } else {
+            hash = calculateHash(resource);
+            misses.incrementAndGet();
+        }
+        current.put(path, state + hash);
+        return hash;
+    }
+
+
+    /**
+     * Save the hashes of the current build. Has to be called after all resource files are copied.
+     */
+    public void save() {
+        final Properties properties = new Properties();
+        properties.putAll(current);
+
+        try {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            properties.store(output, "Content hashes of the resource files");
+            Files.createDirectories(file.getParent());
+            Tools.writeFile(file, output.toByteArray());
+        } catch (IOException ex) {
+            LOGGER.warning(String.format("Writing the resource hashes failed: %s", ex.getMessage()));
+        }
+
+        LOGGER.info(String.format("Resource hashes: %d reused, %d calculated", hits.get(), misses.get()));
+    }
+
+
+    /**
+     * Calculate the hash of the content of a file. The file is read in blocks.
+     *
+     * @param resource The file
+     * @return The hash of the content of the file
+     * @throws IOException Error while reading the file
+     */
+    private static String calculateHash(final Path resource) throws IOException {
+        final MessageDigest digest = Tools.createDigest();
+        try (InputStream input = Files.newInputStream(resource)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read = input.read(buffer);
+            while (read >= 0) {
+                digest.update(buffer, 0, read);
+                read = input.read(buffer);
+            }
+        }
+        return Tools.getHash(digest);
+    }
+
+}
@@ -0,0 +1,241 @@
+package eu.ortlepp.blogbuilder.util.incremental;
+
+import eu.ortlepp.blogbuilder.model.Category;
+import eu.ortlepp.blogbuilder.model.Document;
+import eu.ortlepp.blogbuilder.model.DocumentType;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Data object for a content (Markdown) file in the build manifest. It contains the file attributes to detect
+ * changes and the header values of the file to restore a Document without parsing the file again.
+ *
+ * @author Thorsten Ortlepp
+ */
+public final class SourceEntry {
+
+    /** The size of the file in bytes. */
+    private final long size;
+
+    /** The last modification time of the file in milliseconds. */
+    private final long lastModified;
+
+    /** The hash of the file. */
+    private final String hash;
+
+    /** The position (in bytes) in the file where the content starts. */
+    private final long contentOffset;
+
+    /** The title of the document. */
+    private final String title;
+
+    /** The creation date of the document. */
+    private final LocalDateTime created;
+
+    /** The modification date of the document. */
+    private final LocalDateTime modified;
+
+    /** The type of the document. */
+    private final DocumentType type;
+
+    /** The names of the categories of the document. */
+    private final List<String> categories;
+
+
+    /**
+     * Constructor, initialize the entry with all values.
+     *
+     * @param size The size of the file in bytes
+     * @param lastModified The last modification time of the file in milliseconds
+     * @param hash The hash of the file
+     * @param contentOffset The position (in bytes) in the file where the content starts
+     * @param title The title of the document
+     * @param created The creation date of the document
+     * @param modified The modification date of the document
+     * @param type The type of the document
+     * @param categories The names of the categories of the document
+     */
+    public SourceEntry(final long size, final long lastModified, final String hash, final long contentOffset,
+            final String title, final LocalDateTime created, final LocalDateTime modified, final DocumentType type,
+            final List<String> categories) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+        this.contentOffset = contentOffset;
+        this.title = title;
+        this.created = created;
+        this.modified = modified;
+        this.type = type;
+        this.categories = new ArrayList<String>(categories);
+    }
+
+
+    /**
+     * Create an entry from a Document data object that was read from a file.
+     *
+     * @param document The Document data object
+     * @param size The size of the file in bytes
+     * @param lastModified The last modification time of the file in milliseconds
+     * @return The created entry
+     */
+    public static SourceEntry of(final Document document, final long size, final long lastModified) {
+        final List<String> categories = new ArrayList<String>();
+        for (final Category category : document.getCategories()) {
+            categories.add(category.getName());
+        }
+        return new SourceEntry(size, lastModified, document.getHash(), document.getContentOffset(),
+                document.getTitle(), document.getCreated(), document.getModified(), document.getType(), categories);
+    }
+
+
+    /**
+     * Check if the entry still describes a file. The file is regarded as unchanged if its size and its last
+     * modification time are equal to the values in the entry.
+     *
+     * @param fileSize The current size of the file in bytes
+     * @param fileModified The current last modification time of the file in milliseconds
+     * @return The result of the check; true = the file is unchanged, false = the file has changed
+     */
+    public boolean matches(final long fileSize, final long fileModified) {
+        return size == fileSize && lastModified == fileModified;
+    }
+
+
+    /**
+     * Restore a Document data object from the entry. The content of the document is not restored, it has to be
+     * loaded separately.
+     *
+     * @param document The Document data object to fill with the values of the entry
+     */
+    public void restore(final Document document) {
+        document.setTitle(title);
+        document.setCreated(created);
+        document.setModified(modified);
+        document.setType(type);
+        document.setHash(hash);
+        document.setContentOffset(contentOffset);
+        categories.forEach(document::addCategory);
+    }
+
+
+    /**
+     * Getter for the size of the file in bytes.
+     *
+     * @return The size of the file in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+
+    /**
+     * Getter for the last modification time of the file in milliseconds.
+     *
+     * @return The last modification time of the file in milliseconds
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+
+    /**
+     * Getter for the hash of the file.
+     *
+     * @return The hash of the file
+     */
+    public String getHash() {
+        return hash;
+    }
+
+
+    /**
+     * Getter for the position (in bytes) in the file where the content starts.
+     *
+     * @return The position in the file where the content starts
+     */
+    public long getContentOffset() {
+        return contentOffset;
+    }
+
+
+    /**
+     * Getter for the title of the document.
+     *
+     * @return The title of the document
+     */
+    public String getTitle() {
+        return title;
+    }
+
+
+    /**
+     * Getter for the creation date of the document.
+     *
+     * @return The creation date of the document
+     */
+    public LocalDateTime getCreated() {
+        return created;
+    }
+
+
+    /**
+     * Getter for the modification date of the document.
+     *
+     * @return The modification date of the document
+     */
+    public LocalDateTime getModified() {
+        return modified;
+    }
+
+
+    /**
+     * Getter for the type of the document.
+     *
+     * @return The type of the document
+     */
+    public DocumentType getType() {
+        return type;
+    }
+
+
+    /**
+     * Getter for the names of the categories of the document.
+     *
+     * @return The names of the categories of the document
+     */
+    public List<String> getCategories() {
+        return new ArrayList<String>(categories);
+    }
+
+
+    /**
+     * Parse the names of the categories from a comma separated string.
+     *
+     * @param string The comma separated names
+     * @return The names of the categories
+     */
+    static List<String> parseCategories(final String string) {
+        if (string.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        return Arrays.asList(string.split(","));
+    }
+
+
+    /**
+     * Create the key of a content file in the manifest: the path relative to the content directory with "/" as
+     * separator.
+     *
+     * @param directory The content directory
+     * @param file The content file
+     * @return The key of the content file
+     */
+    public static String getKey(final Path directory, final Path file) {
+        return directory.relativize(file).toString().replaceAll("\\\\", "/");
+    }
+
+}
@@ -0,0 +1,6 @@
+/**
+ * Utilities for incremental builds: remember the state of a build to rebuild only what changed.
+ *
+ * @author Thorsten Ortlepp
+ */
+package eu.ortlepp.blogbuilder.util.incremental;
@@ -1,24 +1,20 @@
 package eu.ortlepp.blogbuilder.util.xml;
 
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import eu.ortlepp.blogbuilder.util.OutputFiles;
+import eu.ortlepp.blogbuilder.util.Tools;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.logging.Logger;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Abstract class to create XML documents / files. Contains some useful helper-methods.
+ * Abstract class to create XML documents / files. Contains some useful helper-methods. The XML is streamed to the
+ * file while it is created, so even large XML files need only little memory.
  *
  * @author Thorsten Ortlepp
  */
@@ -27,79 +23,93 @@ public abstract class AbstractXmlCreator {
     /** A logger to write out messages to the user. */
     private static final Logger LOGGER = Logger.getLogger(AbstractXmlCreator.class.getName());
 
-    /** The XML document. */
-    protected final Document xmlDocument;
-
-    /** The root element of the XML document. */
-    protected Element xmlRoot;
+    /** The helper for writing the files of the built blog. */
+    private final OutputFiles outputFiles;
 
 
     /**
-     * Constructor, initializes the XML document.
+     * Constructor, initializes the creator.
+     *
+     * @param outputFiles The helper for writing the files of the built blog
      */
-    public AbstractXmlCreator() {
-        try {
-            final DocumentBuilderFactory xmlFactory = DocumentBuilderFactory.newInstance();
-            final DocumentBuilder xmlBuilder = xmlFactory.newDocumentBuilder();
-            xmlDocument = xmlBuilder.newDocument();
-        } catch (ParserConfigurationException ex) {
-            LOGGER.severe("Initialization of the XML builder failed");
-            throw new RuntimeException(ex);
-        }
+    protected AbstractXmlCreator(final OutputFiles outputFiles) {
+        this.outputFiles = outputFiles;
     }
 
 
     /**
-     * Initialize the root element of the XML document. The initialization depends on the XML file to create.
-     */
-    protected abstract void initRootElement();
-
-
-    /**
-     * Create a XML element with text content.
+     * Write an XML document to a physical XML file. The XML is streamed to a temporary file that replaces the file
+     * when it is complete (and, if the comparison of files is enabled, its content changed).
      *
-     * @param name The name of the element
-     * @param content The content of the element
-     * @return The created element
+     * @param file The XML file to write
+     * @param content Writes the content of the XML document, starting with its root element
      */
-    protected Element createElement(final String name, final String content) {
-        final Element element = xmlDocument.createElement(name);
-        element.appendChild(xmlDocument.createTextNode(content));
-        return element;
+    protected void writeXmlFile(final File file, final XmlContent content) {
+        final Path temp = Tools.getTempFile(file.toPath());
+        try {
+            try (XmlWriter xml = new XmlWriter(Files.newOutputStream(temp))) {
+                content.write(xml);
+            } catch (IOException ex) {
+                Files.deleteIfExists(temp);
+                throw ex;
+            }
+            if (outputFiles.replace(temp, file.toPath())) {
+                LOGGER.info(String.format("%s created", file.getName()));
+            } else {
+                LOGGER.info(String.format("%s is unchanged", file.getName()));
+            }
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Writing %s failed: %s", file.getName(), ex.getMessage()));
+        }
     }
 
 
     /**
-     * Create an XML attribute with a specific value.
+     * Write an XML document to a physical XML file, but only if the file does not exist or its content changed. The
+     * XML document is created in memory, so this is meant for XML files of limited size.
      *
-     * @param name The name of the attribute
-     * @param value The value of the attribute
-     * @return The created attribute
+     * @param file The XML file to write
+     * @param compress Flag for compressing the file; true = compress with gzip, false = plain XML
+     * @param content Writes the content of the XML document, starting with its root element
      */
-    protected Attr createAttribute(final String name, final String value) {
-        final Attr attr = xmlDocument.createAttribute(name);
-        attr.setValue(value);
-        return attr;
+    protected void writeXmlFileIfChanged(final File file, final boolean compress, final XmlContent content) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            final OutputStream output = compress ? new GZIPOutputStream(bytes) : bytes;
+            try (XmlWriter xml = new XmlWriter(output)) {
+                content.write(xml);
+            }
+
+            if (outputFiles.writeIfChanged(file.toPath(), bytes.toByteArray())) {
+                LOGGER.info(String.format("%s created", file.getName()));
+            } else {
+                LOGGER.info(String.format("%s is unchanged", file.getName()));
+            }
+        } catch (IOException ex) {
+            LOGGER.severe(String.format("Writing %s failed: %s", file.getName(), ex.getMessage()));
+        }
     }
 
 
+
+
+
+
     /**
-     * Write the created XML document to a physical XML file.
+     * Writes the content of an XML document.
      *
-     * @param file The XML file to write
+     * @author Thorsten Ortlepp
      */
-    protected void writeXmlFile(final File file) {
-        try {
-            final TransformerFactory xmlTransFactory = TransformerFactory.newInstance();
-            final Transformer transformer = xmlTransFactory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            xmlDocument.setXmlStandalone(true);
-            transformer.transform(new DOMSource(xmlDocument), new StreamResult(file));
-            LOGGER.info(String.format("%s created", file.getName()));
-        } catch (TransformerException ex) {
-            LOGGER.severe(String.format("Writing %s failed: %s", file.getName(), ex.getMessage()));
-        }
+    @FunctionalInterface
+    protected interface XmlContent {
+
+        /**
+         * Write the content of the XML document, starting with its root element.
+         *
+         * @param xml The writer for the XML document
+         * @throws IOException Error while writing the XML document
+         */
+        void write(XmlWriter xml) throws IOException;
     }
 
 }
@@ -1,13 +1,15 @@
 package eu.ortlepp.blogbuilder.util.xml;
 
+import eu.ortlepp.blogbuilder.model.Document;
+import eu.ortlepp.blogbuilder.util.AssetMap;
+import eu.ortlepp.blogbuilder.util.OutputFiles;
 import eu.ortlepp.blogbuilder.util.Tools;
 import eu.ortlepp.blogbuilder.util.config.Config;
-import eu.ortlepp.blogbuilder.util.config.Directories;
-
-import org.w3c.dom.Element;
+import eu.ortlepp.blogbuilder.util.incremental.FeedEntryCache;
 
 import java.io.File;
-import java.nio.file.Paths;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -15,71 +17,84 @@ import java.time.format.DateTimeFormatter;
 import java.util.List;
 
 /**
- * A creator for Atom Feeds. Creates an Atom Feed which contains the most recent blog posts.
+ * A creator for Atom Feeds. Creates an Atom Feed which contains the most recent blog posts. The content of the blog
+ * posts is the HTML that is converted (and cached) for their pages, with absolute links. For incremental builds, the
+ * entries of unchanged blog posts are taken from the feed cache as they are.
  *
  * @author Thorsten Ortlepp
  */
 public final class FeedCreator extends AbstractXmlCreator {
 
     /** A list with all blog posts in chronological order. */
-    private final List<eu.ortlepp.blogbuilder.model.Document> blogposts;
+    private final List<Document> blogposts;
 
     /** The file to create. */
     private final File feed;
 
+    /** The cache for the entries of the feed. */
+    private final FeedEntryCache cache;
+
+    /** The map of the fingerprinted resource files; the links to them are changed in the blog posts. */
+    private final AssetMap assets;
+
 
     /**
-     * Constructor, initializes the XML document and its root element. The creation of the feed is prepared.
+     * Constructor, the creation of the feed is prepared.
      *
      * @param blogposts A list with all blog posts
-     * @param directory The project directory
+     * @param target The directory where the blog is built
+     * @param cache The cache for the entries of the feed
+     * @param outputFiles The helper for writing the files of the built blog
+     * @param assets The map of the fingerprinted resource files
      */
-    public FeedCreator(final List<eu.ortlepp.blogbuilder.model.Document> blogposts, final String directory) {
-        super();
-        initRootElement();
+    public FeedCreator(final List<Document> blogposts, final Path target, final FeedEntryCache cache,
+            final OutputFiles outputFiles, final AssetMap assets) {
+        super(outputFiles);
         this.blogposts = blogposts;
-        this.feed =
-                Paths.get(directory, Directories.BLOG.toString(), Config.INSTANCE.getFeedFile()).toFile();
+        this.cache = cache;
+        this.assets = assets;
+        this.feed = target.resolve(Config.INSTANCE.getFeedFile()).toFile();
     }
 
 
     /**
-     * Initialize the root element of the feed.
+     * Create the Atom feed and write it to a physical file.
      */
-    @Override
-    protected void initRootElement() {
-        xmlRoot = xmlDocument.createElement("feed");
-        xmlRoot.setAttributeNode(createAttribute("xmlns", "http://www.w3.org/2005/Atom"));
-        xmlDocument.appendChild(xmlRoot);
+    public void createFeed() {
+        writeXmlFile(feed, this::writeContent);
     }
 
 
     /**
-     * Create the Atom feed and write it to a physical file.
+     * Write the content of the feed: the root element with the information about the feed and the blog posts.
+     *
+     * @param xml The writer for the feed
+     * @throws IOException Error while writing the feed
      */
-    public void createFeed() {
-        createFeedInfo();
-        addBlogPosts();
-        writeXmlFile(feed);
+    private void writeContent(final XmlWriter xml) throws IOException {
+        xml.startElement("feed", "xmlns", "http://www.w3.org/2005/Atom");
+        writeFeedInfo(xml);
+        writeBlogPosts(xml);
+        xml.endElement();
     }
 
 
     /**
-     * Create all elements with information about the feed and append the elements to the feed.
+     * Write all elements with information about the feed.
+     *
+     * @param xml The writer for the feed
+     * @throws IOException Error while writing the feed
      */
-    private void createFeedInfo() {
+    private void writeFeedInfo(final XmlWriter xml) throws IOException {
         /* <title> */
-        xmlRoot.appendChild(createElement("title", Config.INSTANCE.getTitle()));
+        xml.element("title", Config.INSTANCE.getTitle());
 
         /* <id> */
-        xmlRoot.appendChild(createElement("id", createId(Config.INSTANCE.getBaseUrl(),
-                LocalDateTime.parse("2016-01-01T12:00:00"), Config.INSTANCE.getFeedFile())));
+        xml.element("id", createId(Config.INSTANCE.getBaseUrl(),
+                LocalDateTime.parse("2016-01-01T12:00:00"), Config.INSTANCE.getFeedFile()));
 
         /* <link> */
-        final Element link = xmlDocument.createElement("link");
-        link.setAttributeNode(createAttribute("href", Config.INSTANCE.getBaseUrl()));
-        link.setAttributeNode(createAttribute("rel", "self"));
-        xmlRoot.appendChild(link);
+        xml.element("link", "", "href", Config.INSTANCE.getBaseUrl(), "rel", "self");
 
         /* <updated> */
         LocalDateTime updated = LocalDateTime.MIN;
@@ -92,53 +107,78 @@ public final class FeedCreator extends AbstractXmlCreator {
                 break;
             }
         }
-        xmlRoot.appendChild(createElement("updated", formatDateTime(updated)));
+        xml.element("updated", formatDateTime(updated));
 
         /* <author> (contains <name>) */
-        final Element author = xmlDocument.createElement("author");
-        author.appendChild(createElement("name", Config.INSTANCE.getAuthor()));
-        xmlRoot.appendChild(author);
+        xml.startElement("author");
+        xml.element("name", Config.INSTANCE.getAuthor());
+        xml.endElement();
     }
 
 
     /**
-     * Add blog posts to the feed. The number of posts to add is set in the configuration file.
+     * Write blog posts to the feed. The number of posts to write is set in the configuration file. If the cache is
+     * enabled, each entry is taken from the cache or created as fragment and added to the cache.
+     *
+     * @param xml The writer for the feed
+     * @throws IOException Error while writing the feed
      */
-    private void addBlogPosts() {
-        for (int i = 0; i < Config.INSTANCE.getFeedPosts(); i++) {
-
-            if (i < blogposts.size()) {
-                final eu.ortlepp.blogbuilder.model.Document document = blogposts.get(i);
+    private void writeBlogPosts(final XmlWriter xml) throws IOException {
+        final String baseurl = Tools.getAbsoluteBaseUrl();
+        final String assetsFingerprint = assets.getFingerprint();
+        final int count = Math.min(Config.INSTANCE.getFeedPosts(), blogposts.size());
+
+        for (int i = 0; i < count; i++) {
+            final Document document = blogposts.get(i);
+
+            if (cache.isEnabled()) {
+                final String key = cache.createKey(Document.getConverterFingerprint(),
+                        Config.INSTANCE.getBaseUrl(), ZoneId.systemDefault().getId(), document.getPath(),
+                        document.getHash(), document.getTitle(), document.getCreated().toString(),
+                        document.getModified().toString(), assetsFingerprint);
+                String entry = cache.getEntry(key);
+                if (entry == null) {
+                    entry = xml.createFragment(fragment -> writeEntry(fragment, document, baseurl));
+                    cache.addEntry(key, entry);
+                }
+                xml.fragment(entry);
+            } else {
+                writeEntry(xml, document, baseurl);
+            }
+        }
+    }
 
-                /* The root element of the blog post / entry */
-                final Element entry = xmlDocument.createElement("entry");
 
-                /* <title> */
-                entry.appendChild(createElement("title", document.getTitle()));
+    /**
+     * Write a blog post to the feed.
+     *
+     * @param xml The writer for the feed
+     * @param document The blog post to write
+     * @param baseurl The absolute base URL for the links in the blog post
+     * @throws IOException Error while writing the feed
+     */
+    private void writeEntry(final XmlWriter xml, final Document document, final String baseurl)
+            throws IOException {
+        /* The element of the blog post / entry */
+        xml.startElement("entry");
 
-                /* <id> */
-                entry.appendChild(createElement("id", createId(Config.INSTANCE.getBaseUrl(), document.getCreated(),
-                        document.getPath())));
+        /* <title> */
+        xml.element("title", document.getTitle());
 
-                /* <updated> */
-                entry.appendChild(createElement("updated", formatDateTime(document.getModified())));
+        /* <id> */
+        xml.element("id", createId(Config.INSTANCE.getBaseUrl(), document.getCreated(), document.getPath()));
 
-                /* <link> */
-                final Element link = xmlDocument.createElement("link");
-                link.setAttributeNode(createAttribute("href", Config.INSTANCE.getBaseUrl() + "/" + document.getPath()));
-                entry.appendChild(link);
+        /* <updated> */
+        xml.element("updated", formatDateTime(document.getModified()));
 
-                /* <content> */
-                final Element content = createElement("content", Tools.makeLinksAbsolute(document.getContentAsHtml()));
-                content.setAttributeNode(createAttribute("type", "html"));
-                entry.appendChild(content);
+        /* <link> */
+        xml.element("link", "", "href", Config.INSTANCE.getBaseUrl() + "/" + document.getPath());
 
-                xmlRoot.appendChild(entry);
+        /* <content> (with the links to fingerprinted resource files) */
+        final String content = document.getContentAsHtml(baseurl);
+        xml.element("content", assets.isEmpty() ? content : assets.rewriteLinks(content, ""), "type", "html");
 
-            } else {
-                break;
-            }
-        }
+        xml.endElement();
     }
 
 
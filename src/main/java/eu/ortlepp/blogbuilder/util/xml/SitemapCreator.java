@@ -1,23 +1,44 @@
 package eu.ortlepp.blogbuilder.util.xml;
 
+import eu.ortlepp.blogbuilder.model.Document;
+import eu.ortlepp.blogbuilder.util.OutputFiles;
 import eu.ortlepp.blogbuilder.util.config.Config;
-import eu.ortlepp.blogbuilder.util.config.Directories;
-
-import org.w3c.dom.Element;
 
 import java.io.File;
-import java.nio.file.Paths;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
 
 /**
- * A creator for sitemaps. Creates a sitemap which contains all blog posts, pages and index pages.
+ * A creator for sitemaps. Creates a sitemap which contains all blog posts, pages and index pages. The index and
+ * category pages are reported by the writer of the HTML files, so the sitemap does not depend on the content of the
+ * blog directory. If the sitemap contains more URLs than allowed for a single sitemap, it is split into several
+ * sitemaps and a sitemap index that refers to them. The blog posts are split by the year of their creation, the pages
+ * (including index and category pages) get their own sitemap. So a new blog post usually changes only the sitemap of
+ * the current year; sitemaps whose content did not change are not written again.
  *
  * @author Thorsten Ortlepp
  */
 public final class SitemapCreator extends AbstractXmlCreator {
 
+    /** The XML namespace of sitemaps and sitemap indexes. */
+    private static final String NAMESPACE = "http://www.sitemaps.org/schemas/sitemap/0.9";
+
+    /** The file extension of sitemaps. */
+    private static final String EXTENSION = ".xml";
+
+    /** The name of the part of a split sitemap that contains the pages. */
+    private static final String PAGES_PART = "pages";
+
     /** The directory with the built blog. */
     private final String directory;
 
@@ -29,14 +50,14 @@ public final class SitemapCreator extends AbstractXmlCreator {
 
 
     /**
-     * Constructor, initializes the XML document and its root element. The creation of the sitemap is prepared.
+     * Constructor, the creation of the sitemap is prepared.
      *
-     * @param directory The project directory
+     * @param target The directory where the blog is built
+     * @param outputFiles The helper for writing the files of the built blog
      */
-    public SitemapCreator(final String directory) {
-        super();
-        initRootElement();
-        this.directory = Paths.get(directory, Directories.BLOG.toString()).toString();
+    public SitemapCreator(final Path target, final OutputFiles outputFiles) {
+        super(outputFiles);
+        this.directory = target.toString();
         this.dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
         baseurl = Config.INSTANCE.getBaseUrl();
@@ -47,69 +68,166 @@ public final class SitemapCreator extends AbstractXmlCreator {
 
 
     /**
-     * Initialize the root element of the sitemap.
+     * Create the sitemap and write it to a physical file. If the sitemap has to be split, the sitemap index is
+     * written to the file of the sitemap.
+     *
+     * @param blogposts A list off all blog posts
+     * @param pages A list off all pages
+     * @param specialPages The index and category pages (filenames and last modification) written by the writer
+     * @return The names of all files of the sitemap (relative to the directory with the built blog)
      */
-    @Override
-    protected void initRootElement() {
-        xmlRoot = xmlDocument.createElement("urlset");
-        xmlRoot.setAttributeNode(createAttribute("xmlns", "http://www.sitemaps.org/schemas/sitemap/0.9"));
-        xmlDocument.appendChild(xmlRoot);
+    public List<String> createSitemap(final List<Document> blogposts, final List<Document> pages,
+            final Map<String, LocalDateTime> specialPages) {
+        /* The URLs of the blog posts (by year) and of the pages */
+        final Map<String, List<SitemapUrl>> parts = new LinkedHashMap<String, List<SitemapUrl>>();
+        for (final Document blogpost : blogposts) {
+            parts.computeIfAbsent(String.valueOf(blogpost.getCreated().getYear()), key -> new ArrayList<SitemapUrl>())
+                .add(new SitemapUrl(baseurl + blogpost.getPath(), blogpost.getModified()));
+        }
+
+        final List<SitemapUrl> pageUrls = new ArrayList<SitemapUrl>();
+        for (final Document page : pages) {
+            pageUrls.add(new SitemapUrl(baseurl + page.getPath(), page.getModified()));
+        }
+
+        for (final Entry<String, LocalDateTime> specialPage : specialPages.entrySet()) {
+            pageUrls.add(new SitemapUrl(baseurl + specialPage.getKey(), specialPage.getValue()));
+        }
+        parts.put(PAGES_PART, pageUrls);
+
+        final int limit = Config.INSTANCE.getSitemapUrls();
+        final int total = parts.values().stream().mapToInt(List::size).sum();
+        if (limit <= 0 || total <= limit) {
+            writeXmlFile(new File(directory, Config.INSTANCE.getSitemapFile()),
+                xml -> writeUrlSet(xml, parts.values().stream().flatMap(List::stream).collect(Collectors.toList())));
+            return Collections.singletonList(Config.INSTANCE.getSitemapFile());
+        }
+
+        return createSplitSitemap(parts, limit);
     }
 
 
     /**
-     * Create the sitemap and write it to a physical file.
+     * Create a split sitemap: a sitemap for each part (or several sitemaps if a part is too large) and a sitemap
+     * index. A part that is too large is split from its oldest URLs on, so new URLs only change its last sitemap.
      *
-     * @param blogposts A list off all blog posts
-     * @param pages A list off all pages
+     * @param parts The URLs of the sitemap, grouped by the parts of the sitemap
+     * @param limit The maximum number of URLs in a single sitemap
+     * @return The names of all files of the sitemap (relative to the directory with the built blog)
      */
-    public void createSitemap(final List<eu.ortlepp.blogbuilder.model.Document> blogposts,
-            final List<eu.ortlepp.blogbuilder.model.Document> pages) {
-        /* Add all blog posts and pages to the sitemap */
-        addDocuments(blogposts);
-        addDocuments(pages);
-
-        /* Get a list of all files (will be null if directory is not a directory) */
-        final String[] files = new File(directory).list();
-
-        /* Add all index and category files to the sitemap */
-        if (files != null) {
-            for (final String file : files) {
-                if (file.matches(Config.INSTANCE.getIndexFile() + "(-\\d+)*\\.html")
-                        || file.matches(Config.INSTANCE.getCategoryFile() + "(.)+\\.html")) {
-                    addUrl(baseurl + file, LocalDateTime.now());
-                }
+    private List<String> createSplitSitemap(final Map<String, List<SitemapUrl>> parts, final int limit) {
+        final boolean compress = Config.INSTANCE.isSitemapGzip();
+        final List<String> files = new ArrayList<String>();
+        final List<SitemapUrl> sitemaps = new ArrayList<SitemapUrl>();
+
+        for (final Entry<String, List<SitemapUrl>> part : parts.entrySet()) {
+            /* The blog posts are sorted newest first */
+            final List<SitemapUrl> urls = new ArrayList<SitemapUrl>(part.getValue());
+            Collections.reverse(urls);
+
+            final int count = (urls.size() + limit - 1) / limit;
+            for (int i = 0; i < count; i++) {
+                final List<SitemapUrl> chunk = urls.subList(i * limit, Math.min((i + 1) * limit, urls.size()));
+                final String file = getPartFile(count > 1 ? part.getKey() + "-" + (i + 1) : part.getKey(), compress);
+                writeXmlFileIfChanged(new File(directory, file), compress, xml -> writeUrlSet(xml, chunk));
+
+                files.add(file);
+                sitemaps.add(new SitemapUrl(baseurl + file, chunk.stream().map(url -> url.lastmod)
+                    .max(Comparator.naturalOrder()).orElse(LocalDateTime.now())));
             }
         }
 
-        /* Write XML to file */
-        writeXmlFile(new File(directory, Config.INSTANCE.getSitemapFile()));
+        /* The sitemap index */
+        writeXmlFileIfChanged(new File(directory, Config.INSTANCE.getSitemapFile()), false, xml -> {
+            xml.startElement("sitemapindex", "xmlns", NAMESPACE);
+            for (final SitemapUrl sitemap : sitemaps) {
+                writeUrl(xml, "sitemap", sitemap);
+            }
+            xml.endElement();
+        });
+        files.add(Config.INSTANCE.getSitemapFile());
+
+        return files;
+    }
+
+
+    /**
+     * Get the filename of a part of a split sitemap. The filename is derived from the filename of the sitemap, e.g.
+     * sitemap-2017.xml for the part 2017 of sitemap.xml.
+     *
+     * @param part The name of the part
+     * @param compress Flag for compressed sitemaps; true = the sitemap is compressed, false = plain XML
+     * @return The filename of the part
+     */
+    private String getPartFile(final String part, final boolean compress) {
+        String name = Config.INSTANCE.getSitemapFile();
+        if (name.endsWith(EXTENSION)) {
+            name = name.substring(0, name.length() - EXTENSION.length());
+        }
+        return name + "-" + part + EXTENSION + (compress ? ".gz" : "");
     }
 
 
     /**
-     * Add all Document objects of a list to the XML document.
+     * Write a sitemap with a list of URLs.
      *
-     * @param documents The list of Document objects
+     * @param xml The writer for the sitemap
+     * @param urls The URLs to write to the sitemap
+     * @throws IOException Error while writing the sitemap
      */
-    private void addDocuments(final List<eu.ortlepp.blogbuilder.model.Document> documents) {
-        for (final eu.ortlepp.blogbuilder.model.Document document : documents) {
-            addUrl(baseurl + document.getPath(), document.getModified());
+    private void writeUrlSet(final XmlWriter xml, final List<SitemapUrl> urls) throws IOException {
+        xml.startElement("urlset", "xmlns", NAMESPACE);
+        for (final SitemapUrl url : urls) {
+            writeUrl(xml, "url", url);
         }
+        xml.endElement();
+    }
+
+
+    /**
+     * Write a URL (with its last modification date) to the sitemap or sitemap index.
+     *
+     * @param xml The writer for the sitemap
+     * @param name The name of the element (url in a sitemap, sitemap in a sitemap index)
+     * @param url The URL to write to the sitemap
+     * @throws IOException Error while writing the sitemap
+     */
+    private void writeUrl(final XmlWriter xml, final String name, final SitemapUrl url) throws IOException {
+        xml.startElement(name);
+        xml.element("loc", url.loc);
+        xml.element("lastmod", url.lastmod.format(dateFormatter));
+        xml.endElement();
     }
 
 
+
+
+
+
     /**
-     * Add a URL (with its last modification date) to the XML document.
+     * A URL in a sitemap with its last modification date.
      *
-     * @param loc The URL to add to the XML document
-     * @param lastmod The modification date of the URL
+     * @author Thorsten Ortlepp
      */
-    private void addUrl(final String loc, final LocalDateTime lastmod) {
-        final Element url = xmlDocument.createElement("url");
-        url.appendChild(createElement("loc", loc));
-        url.appendChild(createElement("lastmod", lastmod.format(dateFormatter)));
-        xmlRoot.appendChild(url);
+    private static final class SitemapUrl {
+
+        /** The URL. */
+        private final String loc;
+
+        /** The last modification date of the URL. */
+        private final LocalDateTime lastmod;
+
+
+        /**
+         * Initialize the URL.
+         *
+         * @param loc The URL
+         * @param lastmod The last modification date of the URL
+         */
+        SitemapUrl(final String loc, final LocalDateTime lastmod) {
+            this.loc = loc;
+            this.lastmod = lastmod;
+        }
     }
 
 }
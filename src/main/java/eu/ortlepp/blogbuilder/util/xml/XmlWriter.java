@@ -0,0 +1,283 @@
+package eu.ortlepp.blogbuilder.util.xml;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A writer for XML files. The XML is written (streamed) directly to the output while it is created, so the memory
+ * usage does not depend on the size of the XML file. The XML is formatted with an indentation of four spaces per
+ * level; elements that contain only text are written in a single line. Text and attribute values are escaped.
+ * Parts of the XML can be created as fragments, so they can be stored and written again later without creating them
+ * again.
+ *
+ * @author Thorsten Ortlepp
+ */
+final class XmlWriter implements Closeable {
+
+    /** The indentation per level. */
+    private static final String INDENT = "    ";
+
+    /** The size of the buffer for writing the file. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The output to write to. */
+    private final java.io.Writer out;
+
+    /** The level of the outermost elements; 0 for an XML file, greater than 0 for a fragment. */
+    private final int level;
+
+    /** The names of all elements that are started, but not ended yet (the innermost element first). */
+    private final Deque<String> elements;
+
+    /** Flag for the start tag of the innermost element; true = the start tag is not closed yet (no content yet). */
+    private boolean startTagOpen;
+
+    /** Flag for the innermost element; true = the element contains other elements. */
+    private boolean hasChildren;
+
+
+    /**
+     * Constructor, writes the XML declaration.
+     *
+     * @param output The output to write the XML to (e.g. a file); it is closed when the writer is closed
+     * @throws IOException Error while writing the XML declaration
+     */
+    XmlWriter(final OutputStream output) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE), 0);
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    }
+
+
+    /**
+     * Constructor, initializes the writer without writing anything.
+     *
+     * @param out The output to write the XML to
+     * @param level The level of the outermost elements
+     */
+    private XmlWriter(final java.io.Writer out, final int level) {
+        this.out = out;
+        this.level = level;
+        elements = new ArrayDeque<String>();
+        startTagOpen = false;
+        hasChildren = false;
+    }
+
+
+    /**
+     * Create a fragment that contains child elements of the innermost element. Nothing is written to the output, the
+     * fragment can be written by fragment() - now or in a later XML file at the same level.
+     *
+     * @param content Writes the elements of the fragment
+     * @return The created fragment
+     * @throws IOException Error while creating the fragment
+     */
+    String createFragment(final AbstractXmlCreator.XmlContent content) throws IOException {
+        final StringWriter fragment = new StringWriter();
+        try (XmlWriter xml = new XmlWriter(fragment, level + elements.size())) {
+            content.write(xml);
+        }
+        return fragment.toString();
+    }
+
+
+    /**
+     * Write a fragment that was created by createFragment() as child elements of the innermost element.
+     *
+     * @param fragment The fragment to write
+     * @throws IOException Error while writing the fragment
+     */
+    void fragment(final String fragment) throws IOException {
+        if (startTagOpen) {
+            out.write('>');
+            startTagOpen = false;
+        }
+        out.write(fragment);
+        hasChildren = true;
+    }
+
+
+    /**
+     * Start an element that contains other elements. The element has to be ended by endElement().
+     *
+     * @param name The name of the element
+     * @param attributes The attributes of the element: pairs of name and value
+     * @throws IOException Error while writing the element
+     */
+    void startElement(final String name, final String... attributes) throws IOException {
+        writeStartTag(name, attributes);
+        elements.push(name);
+        startTagOpen = true;
+        hasChildren = false;
+    }
+
+
+    /**
+     * End the innermost element that was started by startElement().
+     *
+     * @throws IOException Error while writing the element
+     */
+    void endElement() throws IOException {
+        final String name = elements.pop();
+        if (startTagOpen) {
+            out.write("/>");
+        } else {
+            if (hasChildren) {
+                writeIndent();
+            }
+            out.write("</");
+            out.write(name);
+            out.write('>');
+        }
+        startTagOpen = false;
+        hasChildren = true;
+
+        if (level == 0 && elements.isEmpty()) {
+            out.write('\n');
+        }
+    }
+
+
+    /**
+     * Write an element that contains only text. An element without text is written as empty element.
+     *
+     * @param name The name of the element
+     * @param text The text of the element
+     * @param attributes The attributes of the element: pairs of name and value
+     * @throws IOException Error while writing the element
+     */
+    void element(final String name, final String text, final String... attributes) throws IOException {
+        writeStartTag(name, attributes);
+        if (text.isEmpty()) {
+            out.write("/>");
+        } else {
+            out.write('>');
+            writeEscaped(text, false);
+            out.write("</");
+            out.write(name);
+            out.write('>');
+        }
+        hasChildren = true;
+    }
+
+
+    /**
+     * Write the start tag of an element (without the closing bracket) in a new line.
+     *
+     * @param name The name of the element
+     * @param attributes The attributes of the element: pairs of name and value
+     * @throws IOException Error while writing the start tag
+     */
+    private void writeStartTag(final String name, final String... attributes) throws IOException {
+        if (startTagOpen) {
+            out.write('>');
+            startTagOpen = false;
+        }
+        if (level > 0 || !elements.isEmpty()) {
+            writeIndent();
+        }
+
+        out.write('<');
+        out.write(name);
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            out.write(' ');
+            out.write(attributes[i]);
+            out.write("=\"");
+            writeEscaped(attributes[i + 1], true);
+            out.write('"');
+        }
+    }
+
+
+    /**
+     * Write a line break and the indentation for the current level.
+     *
+     * @throws IOException Error while writing the indentation
+     */
+    private void writeIndent() throws IOException {
+        out.write('\n');
+        for (int i = 0; i < level + elements.size(); i++) {
+            out.write(INDENT);
+        }
+    }
+
+
+    /**
+     * Write escaped text. Markup characters, line breaks (in attributes), control characters and characters outside
+     * the Basic Multilingual Plane are written as entity / character references.
+     *
+     * @param text The text to write
+     * @param attribute Flag for attribute values; true = attribute value, false = text of an element
+     * @throws IOException Error while writing the text
+     */
+    private void writeEscaped(final String text, final boolean attribute) throws IOException {
+        int written = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char character = text.charAt(i);
+            final String replacement = getReplacement(text, i, attribute);
+            if (replacement != null) {
+                out.write(text, written, i - written);
+                out.write(replacement);
+                if (Character.isHighSurrogate(character) && i + 1 < text.length()) {
+                    i++;
+                }
+                written = i + 1;
+            }
+        }
+        out.write(text, written, text.length() - written);
+    }
+
+
+    /**
+     * Get the replacement for a character that has to be escaped.
+     *
+     * @param text The text that contains the character
+     * @param index The position of the character in the text
+     * @param attribute Flag for attribute values; true = attribute value, false = text of an element
+     * @return The entity / character reference for the character; null if the character is written as it is
+     */
+    private static String getReplacement(final String text, final int index, final boolean attribute) {
+        final char character = text.charAt(index);
+        switch (character) {
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '&':
+                return "&amp;";
+            case '"':
+                return attribute ? "&quot;" : null;
+            case '\n':
+            case '\t':
+                return attribute ? "&#" + (int) character + ";" : null;
+            default:
+                break;
+        }
+
+        if (character < ' ' || !attribute && character >= '\u007f' && character <= '\u009f') {
+            return "&#" + (int) character + ";";
+        }
+        if (Character.isHighSurrogate(character) && index + 1 < text.length()) {
+            return "&#" + text.codePointAt(index) + ";";
+        }
+        return null;
+    }
+
+
+    /**
+     * Close the writer and the output.
+     *
+     * @throws IOException Error while closing the output
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}